@@ -0,0 +1,63 @@
+package com.attentionseekers.benchmark;
+
+import com.attentionseekers.dto.DemandResponse;
+import com.attentionseekers.service.DemandBucket;
+import com.attentionseekers.service.DemandDataLoader;
+import com.attentionseekers.service.DemandService;
+import com.attentionseekers.service.HexAggregatorService;
+import com.attentionseekers.service.TripEventStore;
+import com.attentionseekers.service.UserType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemandBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int scale;
+
+    private DemandService demandService;
+    private DemandDataLoader dataLoader;
+    private HexAggregatorService hexAggregator;
+    private ZonedDateTime at;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        TripEventStore store = new TripEventStore(new ScaledDatasets(scale));
+        dataLoader = new DemandDataLoader(store);
+        hexAggregator = new HexAggregatorService(store);
+        demandService = new DemandService(dataLoader, ZoneId.of("UTC"));
+        at = ZonedDateTime.of(2023, 1, 10, 18, 0, 0, 0, ZoneId.of("UTC"));
+    }
+
+    @Benchmark
+    public DemandResponse currentDemandForCity() {
+        return demandService.getCurrentDemand(UserType.RIDER, 2);
+    }
+
+    @Benchmark
+    public DemandResponse currentDemandForCityUncached() {
+        demandService.invalidateCache();
+        return demandService.getCurrentDemand(UserType.RIDER, 2);
+    }
+
+    @Benchmark
+    public DemandResponse demandAt() {
+        return demandService.getDemandAt(UserType.FOOD, 3, at);
+    }
+
+    @Benchmark
+    public Map<String, Double> zoneRidesSignal() {
+        return hexAggregator.zoneRidesSignal(DemandBucket.EVENING, null, dataLoader);
+    }
+}
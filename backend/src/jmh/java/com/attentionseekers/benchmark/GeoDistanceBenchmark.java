@@ -0,0 +1,55 @@
+package com.attentionseekers.benchmark;
+
+import com.attentionseekers.service.GeoDistance;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoDistanceBenchmark {
+
+    private static final double QUERY_LAT = 52.0907;
+    private static final double QUERY_LON = 5.1214;
+    private static final double RADIUS_KM = 5.0;
+
+    @Param({"10000", "100000"})
+    public int points;
+
+    private double[] lat;
+    private double[] lon;
+    private double[] cosLat;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        lat = new double[points];
+        lon = new double[points];
+        for (int i = 0; i < points; i++) {
+            lat[i] = 51.5 + random.nextDouble() * 1.5;
+            lon[i] = 4.2 + random.nextDouble() * 2.0;
+        }
+        cosLat = GeoDistance.cosLatitudes(lat);
+    }
+
+    @Benchmark
+    public int scalarHaversineFilter() {
+        int matches = 0;
+        for (int i = 0; i < points; i++) {
+            if (GeoDistance.haversineKm(QUERY_LAT, QUERY_LON, lat[i], lon[i]) <= RADIUS_KM) matches++;
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int radiusKernelFilter() {
+        int[] matches = {0};
+        GeoDistance.radius(QUERY_LAT, QUERY_LON, RADIUS_KM).forEachWithin(lat, lon, cosLat, 0, points, i -> matches[0]++);
+        return matches[0];
+    }
+}
@@ -0,0 +1,37 @@
+package com.attentionseekers.benchmark;
+
+import com.attentionseekers.model.RestLocation;
+import com.attentionseekers.service.RestLocationService;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestLocationBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int scale;
+
+    private RestLocationService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = new RestLocationService(
+                new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+        new ScaledDatasets(scale).scaleRestLocations(service);
+    }
+
+    @Benchmark
+    public List<RestLocation> findClosest() {
+        return service.findClosest(52.0907, 5.1214, 10);
+    }
+}
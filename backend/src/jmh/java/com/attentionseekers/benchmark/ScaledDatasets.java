@@ -0,0 +1,97 @@
+package com.attentionseekers.benchmark;
+
+import com.attentionseekers.model.RestLocation;
+import com.attentionseekers.service.RestLocationService;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Serves the bundled data files with the ride and order CSVs repeated {@code scale} times.
+ * Copy k of each row gets "-k" appended to its id. Rest locations are replicated with a
+ * few hundred metres of seeded jitter, so spatial queries see denser, not identical, points.
+ */
+public class ScaledDatasets implements ResourceLoader {
+
+    private static final String RIDES = "classpath:data/rides_trips.csv";
+    private static final String EATS = "classpath:data/eats_orders.csv";
+    private static final String REST_LOCATIONS = "classpath:data/rest_locations.json";
+    private static final double JITTER_DEGREES = 0.005;
+
+    private final DefaultResourceLoader delegate = new DefaultResourceLoader();
+    private final int scale;
+    private final byte[] rides;
+    private final byte[] eats;
+    private byte[] restLocations;
+
+    public ScaledDatasets(int scale) throws IOException {
+        this.scale = scale;
+        this.rides = scaleCsv(RIDES);
+        this.eats = scaleCsv(EATS);
+    }
+
+    @Override
+    public Resource getResource(String location) {
+        if (RIDES.equals(location)) return new ByteArrayResource(rides);
+        if (EATS.equals(location)) return new ByteArrayResource(eats);
+        if (REST_LOCATIONS.equals(location) && restLocations != null) return new ByteArrayResource(restLocations);
+        return delegate.getResource(location);
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return delegate.getClassLoader();
+    }
+
+    // Replaces the service's locations with scaled copies of the ones it loaded at startup.
+    public void scaleRestLocations(RestLocationService service) throws IOException {
+        List<RestLocation> base = service.getAllLocations();
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int k = 0; k < scale; k++) {
+            for (RestLocation l : base) {
+                double lat = l.getLatitude() + (k == 0 ? 0.0 : (random.nextDouble() - 0.5) * JITTER_DEGREES);
+                double lon = l.getLongitude() + (k == 0 ? 0.0 : (random.nextDouble() - 0.5) * JITTER_DEGREES);
+                if (json.charAt(json.length() - 1) != '[') json.append(',');
+                json.append(String.format(Locale.ROOT,
+                        "{\"type\":\"Feature\",\"id\":\"%s-%d\",\"properties\":{\"amenity\":\"%s\"},"
+                                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.7f,%.7f]}}",
+                        l.getId(), k, l.getAmenity() == null ? "" : l.getAmenity(), lon, lat));
+            }
+        }
+        json.append("]}");
+        this.restLocations = json.toString().getBytes(StandardCharsets.UTF_8);
+        service.reload(this);
+    }
+
+    private byte[] scaleCsv(String location) throws IOException {
+        StringBuilder out = new StringBuilder();
+        List<String> rows;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                delegate.getResource(location).getInputStream(), StandardCharsets.UTF_8))) {
+            out.append(reader.readLine()).append('\n');
+            rows = reader.lines().filter(line -> !line.isBlank()).toList();
+        }
+        for (int k = 0; k < scale; k++) {
+            for (String row : rows) {
+                int comma = row.indexOf(',');
+                if (k == 0 || comma < 0) {
+                    out.append(row);
+                } else {
+                    out.append(row, 0, comma).append('-').append(k).append(row, comma, row.length());
+                }
+                out.append('\n');
+            }
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
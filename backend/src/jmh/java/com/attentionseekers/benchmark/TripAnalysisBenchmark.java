@@ -0,0 +1,79 @@
+package com.attentionseekers.benchmark;
+
+import com.attentionseekers.dto.TripAnalysisRequest;
+import com.attentionseekers.dto.TripOfferScore;
+import com.attentionseekers.service.HistoricalTripDataLoader;
+import com.attentionseekers.service.TripAnalysisService;
+import com.attentionseekers.service.TripEventStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TripAnalysisBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int scale;
+
+    private TripAnalysisService analysisService;
+    private TripAnalysisRequest request;
+    private List<TripAnalysisRequest> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new TripEventStore(new ScaledDatasets(scale)));
+        analysisService = new TripAnalysisService(loader);
+
+        // real trips, so the radius filters find neighbours; the batch spreads over the dataset so
+        // its offers fall in different cells and each one runs its own analysis
+        List<HistoricalTripDataLoader.TripRecord> trips = loader.getAllTrips();
+        request = offer(trips.get(0));
+        batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(offer(trips.get(i * (trips.size() / 50))));
+        }
+    }
+
+    private static TripAnalysisRequest offer(HistoricalTripDataLoader.TripRecord trip) {
+        TripAnalysisRequest offer = new TripAnalysisRequest();
+        offer.setTotalEarnings(18.5);
+        offer.setEstimatedDuration(22);
+        offer.setDistance(9.0);
+        offer.setSurgeMultiplier(1.2);
+        offer.setPickupLat(String.valueOf(trip.pickupLat));
+        offer.setPickupLon(String.valueOf(trip.pickupLon));
+        offer.setDropOffLat(String.valueOf(trip.dropLat));
+        offer.setDropOffLon(String.valueOf(trip.dropLon));
+        return offer;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        analysisService.close();
+    }
+
+    @Benchmark
+    public String analyzeTripRequest() {
+        return analysisService.analyzeTripRequest(request);
+    }
+
+    @Benchmark
+    public String analyzeTripRequestUncached() {
+        analysisService.invalidateCache();
+        return analysisService.analyzeTripRequest(request);
+    }
+
+    @Benchmark
+    public List<TripOfferScore> analyzeTripBatchOf50Uncached() {
+        analysisService.invalidateCache();
+        return analysisService.analyzeTripBatch(batch);
+    }
+}
@@ -0,0 +1,37 @@
+package com.attentionseekers.config;
+
+import com.attentionseekers.service.DataSnapshot;
+import com.attentionseekers.service.DataSnapshots;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Pins the dataset snapshot that is live when a request comes in, so everything the request
+// reads comes from it, and tags the response with that snapshot.
+@Component
+public class DataSnapshotHeaderFilter extends OncePerRequestFilter {
+
+    private final DataSnapshots snapshots;
+
+    public DataSnapshotHeaderFilter(DataSnapshots snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        DataSnapshot snapshot = snapshots.pin();
+        try {
+            response.setHeader("X-Data-Version", String.valueOf(snapshot.getVersion()));
+            response.setHeader("X-Data-Loaded-At", snapshot.getLoadedAt().toString());
+            chain.doFilter(request, response);
+        } finally {
+            snapshots.unpin();
+        }
+    }
+}
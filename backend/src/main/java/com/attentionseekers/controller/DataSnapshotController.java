@@ -0,0 +1,30 @@
+package com.attentionseekers.controller;
+
+import com.attentionseekers.service.DataSnapshotManager;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/data")
+@CrossOrigin(origins = "*")
+public class DataSnapshotController {
+
+    private final DataSnapshotManager snapshots;
+
+    public DataSnapshotController(DataSnapshotManager snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    @GetMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> snapshot() {
+        return ResponseEntity.ok(snapshots.stats());
+    }
+
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reload() {
+        snapshots.reload();
+        return ResponseEntity.ok(snapshots.stats());
+    }
+}
@@ -11,6 +11,8 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("api/demand")
 public class DemandController {
@@ -33,6 +35,18 @@ public class DemandController {
         return ResponseEntity.ok(demandService.getNext2HoursDemand(type));
     }
 
+    @GetMapping("/recent")
+    public ResponseEntity<DemandResponse> recent(@RequestParam(value = "userType", required = false) String userType,
+                                                 @RequestParam(value = "cityId", required = false, defaultValue = "-1") int cityId) {
+        UserType type = parseUserType(userType);
+        return ResponseEntity.ok(demandService.getRecentDemand(type, cityId));
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Long>> cacheStats() {
+        return ResponseEntity.ok(demandService.cacheStats());
+    }
+
     private UserType parseUserType(String raw) {
         try {
             return UserType.from(raw);
@@ -0,0 +1,51 @@
+package com.attentionseekers.controller;
+
+import com.attentionseekers.dto.TripEventRequest;
+import com.attentionseekers.service.DemandIngestionService;
+import com.attentionseekers.service.EventDataset;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/events")
+@CrossOrigin(origins = "*")
+public class EventIngestionController {
+
+    private final DemandIngestionService ingestionService;
+
+    public EventIngestionController(DemandIngestionService ingestionService) {
+        this.ingestionService = ingestionService;
+    }
+
+    @PostMapping("/{dataset}")
+    public ResponseEntity<Map<String, Long>> ingest(@PathVariable String dataset, @RequestBody TripEventRequest event) {
+        boolean ok = ingestionService.ingest(parseDataset(dataset), event);
+        if (!ok) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "city_id and start_time (yyyy-MM-dd HH:mm:ss) are required");
+        }
+        return ResponseEntity.ok(Map.of("accepted", 1L, "rejected", 0L));
+    }
+
+    @PostMapping("/{dataset}/batch")
+    public ResponseEntity<Map<String, Long>> ingestBatch(@PathVariable String dataset, @RequestBody List<TripEventRequest> events) {
+        return ResponseEntity.ok(ingestionService.ingestAll(parseDataset(dataset), events));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Long>> stats() {
+        return ResponseEntity.ok(ingestionService.stats());
+    }
+
+    private EventDataset parseDataset(String raw) {
+        try {
+            return EventDataset.from(raw);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package com.attentionseekers.controller;
 
+import com.attentionseekers.dto.RouteRestStop;
+import com.attentionseekers.dto.RouteRestStopRequest;
 import com.attentionseekers.model.RestLocation;
 import com.attentionseekers.service.RestLocationService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/locations")
@@ -12,16 +25,101 @@ import java.util.List;
 public class RestLocationController {
 
     private final RestLocationService service;
+    private final ObjectMapper mapper;
 
-    public RestLocationController(RestLocationService service) {
+    public RestLocationController(RestLocationService service, ObjectMapper mapper) {
         this.service = service;
+        this.mapper = mapper;
     }
 
+    // Optional ?amenity=charging_station and repeated ?filter=key:value, e.g. filter=parking:street_side.
     @GetMapping("/nearby/{lat}/{lon}/{limit}")
     public List<RestLocation> getNearby(
             @PathVariable double lat,
             @PathVariable double lon,
-            @PathVariable int limit) {
-        return service.findClosest(lat, lon, limit);
+            @PathVariable int limit,
+            @RequestParam(required = false) String amenity,
+            @RequestParam(required = false) List<String> filter) {
+        try {
+            return service.findClosest(lat, lon, limit, amenity, parseFilters(filter));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Long> stats() {
+        return service.loadStats();
+    }
+
+    @GetMapping("/within")
+    public ResponseEntity<StreamingResponseBody> getWithin(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam double radiusMeters,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return stream(service.findWithin(lat, lon, radiusMeters, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping("/viewport")
+    public ResponseEntity<StreamingResponseBody> getViewport(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return stream(service.findInViewport(south, west, north, east, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @PostMapping("/along-route")
+    public List<RouteRestStop> getAlongRoute(@RequestBody RouteRestStopRequest request) {
+        try {
+            return service.findAlongRoute(request);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, String> parseFilters(List<String> filters) {
+        Map<String, String> parsed = new LinkedHashMap<>();
+        if (filters == null) return parsed;
+        for (String filter : filters) {
+            int colon = filter.indexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("filter must be key:value, got " + filter);
+            parsed.put(filter.substring(0, colon), filter.substring(colon + 1));
+        }
+        return parsed;
+    }
+
+    // Writes {"items": [...], "nextCursor": ...} location by location.
+    private ResponseEntity<StreamingResponseBody> stream(RestLocationService.Page page) {
+        StreamingResponseBody body = out -> {
+            // the servlet container owns the stream, so flush rather than close
+            JsonGenerator json = mapper.createGenerator(out);
+            json.writeStartObject();
+            json.writeArrayFieldStart("items");
+            page.forEach(location -> {
+                try {
+                    json.writeObject(location);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            json.writeEndArray();
+            json.writeStringField("nextCursor", page.nextCursor());
+            json.writeEndObject();
+            json.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 }
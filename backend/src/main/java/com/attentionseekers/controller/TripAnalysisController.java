@@ -2,10 +2,15 @@ package com.attentionseekers.controller;
 
 import com.attentionseekers.dto.TripAnalysisRequest;
 import com.attentionseekers.dto.TripAnalysisResponse;
+import com.attentionseekers.dto.TripOfferScore;
 import com.attentionseekers.service.TripAnalysisService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/api")
@@ -30,4 +35,13 @@ public class TripAnalysisController {
                     .body(new TripAnalysisResponse("Failed to analyze trip"));
         }
     }
+
+    @PostMapping("/analyze-trips")
+    public List<TripOfferScore> analyzeTrips(@RequestBody List<TripAnalysisRequest> requests) {
+        try {
+            return tripAnalysisService.analyzeTripBatch(requests);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.attentionseekers.dto;
+
+import com.attentionseekers.model.RestLocation;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteRestStop {
+    private RestLocation location;
+    private double alongRouteKm;
+    private double offRouteMeters;
+}
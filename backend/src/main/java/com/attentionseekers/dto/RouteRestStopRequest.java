@@ -0,0 +1,20 @@
+package com.attentionseekers.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class RouteRestStopRequest {
+    // [lat, lon] points in travel order; the pickup/dropoff pair is used when absent
+    private List<List<Double>> path;
+    private Double pickupLat;
+    private Double pickupLon;
+    private Double dropoffLat;
+    private Double dropoffLon;
+    private double corridorMeters = 500.0;
+    private int limit = 50;
+    private String amenity;
+    private Map<String, String> filters;
+}
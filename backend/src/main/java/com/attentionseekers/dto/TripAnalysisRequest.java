@@ -15,4 +15,6 @@ public class TripAnalysisRequest {
     private String pickupLon;
     private String dropOffLat;
     private String dropOffLon;
+    // Optional; derived from the pickup coordinates when absent.
+    private Integer cityId;
 }
@@ -0,0 +1,38 @@
+package com.attentionseekers.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class TripEventRequest {
+    @JsonProperty("ride_id")
+    private String rideId;
+    @JsonProperty("order_id")
+    private String orderId;
+    @JsonProperty("city_id")
+    private Integer cityId;
+    @JsonProperty("start_time")
+    private String startTime;
+    @JsonProperty("end_time")
+    private String endTime;
+    @JsonProperty("pickup_lat")
+    private Double pickupLat;
+    @JsonProperty("pickup_lon")
+    private Double pickupLon;
+    @JsonProperty("pickup_hex_id9")
+    private String pickupHexId9;
+    @JsonProperty("drop_lat")
+    private Double dropLat;
+    @JsonProperty("drop_lon")
+    private Double dropLon;
+    @JsonProperty("drop_hex_id9")
+    private String dropHexId9;
+    @JsonProperty("distance_km")
+    private Double distanceKm;
+    @JsonProperty("duration_mins")
+    private Integer durationMins;
+    @JsonProperty("surge_multiplier")
+    private Double surgeMultiplier;
+    @JsonProperty("net_earnings")
+    private Double netEarnings;
+}
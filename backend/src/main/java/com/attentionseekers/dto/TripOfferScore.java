@@ -0,0 +1,16 @@
+package com.attentionseekers.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TripOfferScore {
+    private int index;
+    private int rank;
+    private double score;
+    private String recommendation;
+    private String suggestion;
+}
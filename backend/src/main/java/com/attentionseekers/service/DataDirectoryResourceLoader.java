@@ -0,0 +1,39 @@
+package com.attentionseekers.service;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Serves classpath:data/<name> from <directory>/<name> when that file exists, so a data
+// directory can replace the bundled files one at a time.
+class DataDirectoryResourceLoader implements ResourceLoader {
+
+    private static final String DATA_PREFIX = "classpath:data/";
+
+    private final Path directory;
+    private final ResourceLoader fallback;
+
+    DataDirectoryResourceLoader(Path directory, ResourceLoader fallback) {
+        this.directory = directory;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Resource getResource(String location) {
+        if (location.startsWith(DATA_PREFIX)) {
+            Path file = directory.resolve(location.substring(DATA_PREFIX.length()));
+            if (Files.isRegularFile(file)) {
+                return new FileSystemResource(file);
+            }
+        }
+        return fallback.getResource(location);
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return fallback.getClassLoader();
+    }
+}
@@ -0,0 +1,91 @@
+package com.attentionseekers.service;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * One version of every dataset we serve: the state each component built, keyed by the Part it
+ * registered, plus the version, load time and source it was published under. A snapshot never
+ * changes once published; DataSnapshots swaps in a whole new one.
+ */
+public final class DataSnapshot {
+
+    private final long version;
+    private final Instant loadedAt;
+    private final String source;
+    private final Object[] parts;
+
+    private DataSnapshot(long version, Instant loadedAt, String source, Object[] parts) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.source = source;
+        this.parts = parts;
+    }
+
+    static DataSnapshot empty(String source) {
+        return new DataSnapshot(1, Instant.now(), source, new Object[0]);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(Part<T> part) {
+        return (T) parts[part.slot];
+    }
+
+    // Starts the next snapshot from this one; parts that are not replaced carry over.
+    Builder toBuilder() {
+        return new Builder(parts);
+    }
+
+    DataSnapshot withPart(Object state) {
+        Object[] next = Arrays.copyOf(parts, parts.length + 1);
+        next[parts.length] = state;
+        return new DataSnapshot(version, loadedAt, source, next);
+    }
+
+    int partCount() {
+        return parts.length;
+    }
+
+    /** Typed handle on one component's slot in every snapshot. */
+    static final class Part<T> {
+        private final int slot;
+
+        Part(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    static final class Builder {
+        private final Object[] parts;
+
+        private Builder(Object[] parts) {
+            this.parts = parts.clone();
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T get(Part<T> part) {
+            return (T) parts[part.slot];
+        }
+
+        <T> Builder put(Part<T> part, T state) {
+            parts[part.slot] = state;
+            return this;
+        }
+
+        DataSnapshot build(long version, Instant loadedAt, String source) {
+            return new DataSnapshot(version, loadedAt, source, parts.clone());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.attentionseekers.service;
+
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Watches data.directory and rebuilds every dataset when a file in it changes. All components
+ * build their replacement state into one staged DataSnapshot, which is published with a single
+ * volatile write only once every component has succeeded, so requests never block, never see
+ * a mix of old and new data, and a failed reload leaves the previous snapshot in place. Events
+ * ingested live are replayed into the rebuilt demand counters before the swap.
+ */
+@Component
+public class DataSnapshotManager {
+
+    private final DataSnapshots snapshots;
+    private final Path directory;
+    private final ResourceLoader resourceLoader;
+    private final TripEventStore eventStore;
+    private final DemandDataLoader demandDataLoader;
+    private final HexAggregatorService hexAggregator;
+    private final HistoricalTripDataLoader tripDataLoader;
+    private final DemandFeatureStore featureStore;
+    private final RestLocationService restLocations;
+    private final DemandService demandService;
+    private final TripAnalysisService tripAnalysis;
+
+    private Map<String, String> fingerprint = Map.of();
+    private volatile long lastReloadMillis;
+    private volatile String lastError;
+    private volatile long failedReloads;
+
+    public DataSnapshotManager(DataSnapshots snapshots,
+                               TripEventStore eventStore,
+                               DemandDataLoader demandDataLoader,
+                               HexAggregatorService hexAggregator,
+                               HistoricalTripDataLoader tripDataLoader,
+                               DemandFeatureStore featureStore,
+                               RestLocationService restLocations,
+                               DemandService demandService,
+                               TripAnalysisService tripAnalysis) {
+        if (eventStore.snapshots() != snapshots || demandDataLoader.getEventStore() != eventStore
+                || tripDataLoader.snapshots() != snapshots
+                || featureStore.snapshots() != snapshots || restLocations.snapshots() != snapshots) {
+            throw new IllegalArgumentException("Every dataset component must read from the same DataSnapshots");
+        }
+        this.snapshots = snapshots;
+        this.directory = snapshots.directory();
+        this.resourceLoader = snapshots.resourceLoader();
+        this.eventStore = eventStore;
+        this.demandDataLoader = demandDataLoader;
+        this.hexAggregator = hexAggregator;
+        this.tripDataLoader = tripDataLoader;
+        this.featureStore = featureStore;
+        this.restLocations = restLocations;
+        this.demandService = demandService;
+        this.tripAnalysis = tripAnalysis;
+        // the components loaded the directory's files at startup; only later changes need a reload
+        if (directory != null && Files.isDirectory(directory)) {
+            try {
+                this.fingerprint = fingerprint(directory);
+            } catch (IOException e) {
+                lastError = e.toString();
+            }
+        }
+    }
+
+    public DataSnapshot current() {
+        return snapshots.latest();
+    }
+
+    @Scheduled(fixedDelayString = "${data.reload-interval-ms:10000}")
+    public synchronized void checkForChanges() {
+        if (directory == null || !Files.isDirectory(directory)) return;
+        Map<String, String> next;
+        try {
+            next = fingerprint(directory);
+        } catch (IOException e) {
+            lastError = e.toString();
+            return;
+        }
+        if (next.equals(fingerprint)) return;
+        if (reload()) {
+            fingerprint = next;
+        }
+    }
+
+    public synchronized boolean reload() {
+        long started = System.currentTimeMillis();
+        try {
+            TripEventStore staged = new TripEventStore(resourceLoader);
+            DataSnapshot.Builder next = snapshots.stage();
+            eventStore.prepareReload(staged, next);
+            demandDataLoader.prepareReload(staged, next);
+            hexAggregator.prepareReload(staged, next);
+            tripDataLoader.prepareReload(staged, resourceLoader, next);
+            featureStore.prepareReload(resourceLoader, next);
+            restLocations.prepareReload(resourceLoader, next);
+
+            // events ingested while the files were read are in the deltas too, so nothing is lost
+            LiveEventDeltas liveEvents = demandDataLoader.liveEvents();
+            liveEvents.paused(() -> {
+                demandDataLoader.replayLiveEvents(next);
+                hexAggregator.replayLiveEvents(liveEvents, next);
+                snapshots.publish(next);
+            });
+            demandService.invalidateCache();
+            tripAnalysis.invalidateCache();
+            lastError = null;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failedReloads++;
+            lastError = e.toString();
+            return false;
+        } finally {
+            lastReloadMillis = System.currentTimeMillis() - started;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        DataSnapshot snapshot = snapshots.latest();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("version", snapshot.getVersion());
+        stats.put("loadedAt", snapshot.getLoadedAt().toString());
+        stats.put("source", snapshot.getSource());
+        stats.put("lastReloadMillis", lastReloadMillis);
+        stats.put("failedReloads", failedReloads);
+        stats.put("lastError", lastError);
+        stats.put("restLocations", restLocations.loadStats());
+        return stats;
+    }
+
+    private static Map<String, String> fingerprint(Path directory) throws IOException {
+        Map<String, String> out = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(file)) continue;
+                out.put(file.getFileName().toString(), Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file));
+            }
+        }
+        return out;
+    }
+}
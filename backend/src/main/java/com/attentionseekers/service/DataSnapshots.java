@@ -0,0 +1,111 @@
+package com.attentionseekers.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+/**
+ * The one volatile reference every dataset component reads its state through, so a reload
+ * replaces the event columns, demand counts, hex index, trip data, feature tables and rest
+ * locations with a single write. A request pins the snapshot that was live when it arrived and
+ * every component it touches reads that one, even if a reload lands midway.
+ *
+ * Data files are resolved here too: with data.directory set, its files override classpath:data/
+ * from the first load on.
+ */
+@Component
+public class DataSnapshots {
+
+    static final String CLASSPATH_SOURCE = "classpath";
+
+    private final Path directory;
+    private final ResourceLoader resourceLoader;
+    private final ThreadLocal<DataSnapshot> pinned = new ThreadLocal<>();
+    private volatile DataSnapshot published;
+
+    public DataSnapshots(ResourceLoader resourceLoader) {
+        this(null, resourceLoader);
+    }
+
+    @Autowired
+    public DataSnapshots(@Value("${data.directory:}") String directory, ResourceLoader resourceLoader) {
+        this.directory = directory == null || directory.isBlank() ? null : Paths.get(directory).toAbsolutePath();
+        this.resourceLoader = this.directory == null
+                ? resourceLoader : new DataDirectoryResourceLoader(this.directory, resourceLoader);
+        this.published = DataSnapshot.empty(source());
+    }
+
+    // The snapshot pinned on this thread, else the latest one.
+    public DataSnapshot current() {
+        DataSnapshot snapshot = pinned.get();
+        return snapshot != null ? snapshot : published;
+    }
+
+    // The latest published snapshot, whatever this thread has pinned.
+    public DataSnapshot latest() {
+        return published;
+    }
+
+    public DataSnapshot pin() {
+        DataSnapshot snapshot = published;
+        pinned.set(snapshot);
+        return snapshot;
+    }
+
+    public void unpin() {
+        pinned.remove();
+    }
+
+    // Runs work against the given snapshot, for worker threads serving part of a pinned request.
+    public <T> T withPinned(DataSnapshot snapshot, Supplier<T> work) {
+        DataSnapshot previous = pinned.get();
+        pinned.set(snapshot);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) pinned.remove(); else pinned.set(previous);
+        }
+    }
+
+    ResourceLoader resourceLoader() {
+        return resourceLoader;
+    }
+
+    // null when no data directory is configured
+    Path directory() {
+        return directory;
+    }
+
+    String source() {
+        return directory == null ? CLASSPATH_SOURCE : directory.toString();
+    }
+
+    // Components register their initial state once, from their constructor.
+    synchronized <T> DataSnapshot.Part<T> register(T initial) {
+        DataSnapshot.Part<T> part = new DataSnapshot.Part<>(published.partCount());
+        published = published.withPart(initial);
+        return part;
+    }
+
+    synchronized DataSnapshot.Builder stage() {
+        return published.toBuilder();
+    }
+
+    synchronized DataSnapshot publish(DataSnapshot.Builder next) {
+        published = next.build(published.getVersion() + 1, Instant.now(), source());
+        return published;
+    }
+
+    // Swaps one component's state outside a full reload, keeping the version.
+    synchronized <T> void replace(DataSnapshot.Part<T> part, T state) {
+        DataSnapshot current = published;
+        published = current.toBuilder().put(part, state)
+                .build(current.getVersion(), current.getLoadedAt(), current.getSource());
+    }
+}
@@ -18,7 +18,10 @@ public enum DemandBucket {
     }
 
     public static DemandBucket from(LocalTime time) {
-        int hour = time.getHour();
+        return fromHour(time.getHour());
+    }
+
+    public static DemandBucket fromHour(int hour) {
         if (hour >= 6 && hour < 12) {
             return MORNING;
         }
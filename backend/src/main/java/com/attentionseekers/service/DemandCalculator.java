@@ -1,7 +1,9 @@
 package com.attentionseekers.service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -11,6 +13,27 @@ public class DemandCalculator {
         RIDER, FOOD
     }
 
+    public enum Level {
+        LOW("low"), MED("med"), HIGH("high");
+
+        private final String label;
+
+        Level(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final String[] RIDER_RECOMMENDATIONS = recommendations("Focus on ride demand (");
+    private static final String[] FOOD_RECOMMENDATIONS = recommendations("Focus on food demand (");
+    private static final String RECOMMEND_RIDES = "rides";
+    private static final String RECOMMEND_EATS = "eats";
+    private static final String RECOMMEND_STAY = "stay";
+    private static final String RECOMMEND_EITHER = "either";
+
     public static Map<String, ZoneDemand> calculateDemand(
             Map<String, Double> rides,
             Map<String, Double> eats,
@@ -21,54 +44,104 @@ public class DemandCalculator {
             Map<String, Double> cancellation,
             UserType userType
     ) {
+        Set<String> zoneIds = new HashSet<>();
+        if (rides != null) zoneIds.addAll(rides.keySet());
+        if (eats != null) zoneIds.addAll(eats.keySet());
+        if (surge != null) zoneIds.addAll(surge.keySet());
+        if (heat != null) zoneIds.addAll(heat.keySet());
+        if (incentives != null) zoneIds.addAll(incentives.keySet());
+        if (weatherFactor != null) zoneIds.addAll(weatherFactor.keySet());
+        if (cancellation != null) zoneIds.addAll(cancellation.keySet());
+
+        ZoneIndex zones = new ZoneIndex();
+        for (String z : zoneIds) {
+            zones.intern(z);
+        }
+        int n = zones.size();
+        Scores scores = new Scores(n);
+        calculateDemand(n,
+                toArray(rides, zones, 0.0),
+                toArray(eats, zones, 0.0),
+                toArray(surge, zones, 0.0),
+                toArray(heat, zones, 0.0),
+                toArray(incentives, zones, 0.0),
+                toArray(weatherFactor, zones, 1.0),
+                toArray(cancellation, zones, 0.0),
+                userType,
+                scores);
+
         Map<String, ZoneDemand> out = new HashMap<>();
+        for (int z = 0; z < n; z++) {
+            out.put(zones.name(z), scores.toZoneDemand(z));
+        }
+        return out;
+    }
 
-        Set<String> zones = new HashSet<>();
-        if (rides != null) zones.addAll(rides.keySet());
-        if (eats != null) zones.addAll(eats.keySet());
-        if (surge != null) zones.addAll(surge.keySet());
-        if (heat != null) zones.addAll(heat.keySet());
-        if (incentives != null) zones.addAll(incentives.keySet());
-        if (weatherFactor != null) zones.addAll(weatherFactor.keySet());
-        if (cancellation != null) zones.addAll(cancellation.keySet());
-
-        for (String z : zones) {
-            double r = safeGet(rides, z, 0.0);
-            double e = safeGet(eats, z, 0.0);
-            double s = safeGet(surge, z, 0.0);
-            double h = safeGet(heat, z, 0.0);
-            double i = safeGet(incentives, z, 0.0);
-            double w = safeGet(weatherFactor, z, 1.0);
-            double c = safeGet(cancellation, z, 0.0);
+    /**
+     * Scores zones 0..zoneCount-1 into {@code out} without allocating. Inputs are indexed by zone
+     * ordinal; a null array means "no signal" (1.0 for weather, 0.0 otherwise).
+     */
+    public static void calculateDemand(
+            int zoneCount,
+            double[] rides,
+            double[] eats,
+            double[] surge,
+            double[] heat,
+            double[] incentives,
+            double[] weatherFactor,
+            double[] cancellation,
+            UserType userType,
+            Scores out
+    ) {
+        out.ensureCapacity(zoneCount);
+        for (int z = 0; z < zoneCount; z++) {
+            double r = at(rides, z, 0.0);
+            double e = at(eats, z, 0.0);
+            double s = at(surge, z, 0.0);
+            double h = at(heat, z, 0.0);
+            double i = at(incentives, z, 0.0);
+            double w = at(weatherFactor, z, 1.0);
+            double c = at(cancellation, z, 0.0);
 
             double ridesScore = clamp(0.9 * r + 0.05 * s + 0.03 * h + 0.02 * (w - 1.0) - 0.05 * c + 0.0 * i);
             double eatsScore  = clamp(0.9 * e + 0.05 * s + 0.03 * h + 0.02 * (w - 1.0) + 0.0 * i);
 
-            String ridesLevel = toLevel(ridesScore);
-            String eatsLevel  = toLevel(eatsScore);
+            Level ridesLevel = toLevel(ridesScore);
+            Level eatsLevel  = toLevel(eatsScore);
 
             String recommendation;
             if (userType == UserType.RIDER) {
-                recommendation = "Focus on ride demand (" + ridesLevel + ")";
+                recommendation = RIDER_RECOMMENDATIONS[ridesLevel.ordinal()];
             } else if (userType == UserType.FOOD) {
-                recommendation = "Focus on food demand (" + eatsLevel + ")";
+                recommendation = FOOD_RECOMMENDATIONS[eatsLevel.ordinal()];
             } else {
-                if (ridesScore - eatsScore > 0.15) recommendation = "rides";
-                else if (eatsScore - ridesScore > 0.15) recommendation = "eats";
-                else if (ridesScore < 0.33 && eatsScore < 0.33) recommendation = "stay";
-                else recommendation = "either";
+                if (ridesScore - eatsScore > 0.15) recommendation = RECOMMEND_RIDES;
+                else if (eatsScore - ridesScore > 0.15) recommendation = RECOMMEND_EATS;
+                else if (ridesScore < 0.33 && eatsScore < 0.33) recommendation = RECOMMEND_STAY;
+                else recommendation = RECOMMEND_EITHER;
             }
-            ZoneDemand zd = new ZoneDemand(round(ridesScore), ridesLevel, round(eatsScore), eatsLevel, recommendation);
-            out.put(z, zd);
+
+            out.ridesScore[z] = round(ridesScore);
+            out.ridesLevel[z] = ridesLevel;
+            out.eatsScore[z] = round(eatsScore);
+            out.eatsLevel[z] = eatsLevel;
+            out.recommendation[z] = recommendation;
         }
+        out.size = zoneCount;
+    }
 
+    private static double[] toArray(Map<String, Double> m, ZoneIndex zones, double def) {
+        if (m == null) return null;
+        double[] out = new double[zones.size()];
+        for (int z = 0; z < out.length; z++) {
+            Double v = m.get(zones.name(z));
+            out[z] = v == null ? def : v;
+        }
         return out;
     }
 
-    private static double safeGet(Map<String, Double> m, String key, double def) {
-        if (m == null) return def;
-        Double v = m.get(key);
-        return v == null ? def : v;
+    private static double at(double[] values, int z, double def) {
+        return values == null || z >= values.length ? def : values[z];
     }
 
     private static double clamp(double v) {
@@ -82,10 +155,85 @@ public class DemandCalculator {
         return Math.round(v * 100.0) / 100.0;
     }
 
-    private static String toLevel(double score) {
-        if (score < 0.33) return "low";
-        if (score < 0.66) return "med";
-        return "high";
+    private static Level toLevel(double score) {
+        if (score < 0.33) return Level.LOW;
+        if (score < 0.66) return Level.MED;
+        return Level.HIGH;
+    }
+
+    private static String[] recommendations(String prefix) {
+        String[] out = new String[Level.values().length];
+        for (Level level : Level.values()) {
+            out[level.ordinal()] = prefix + level.getLabel() + ")";
+        }
+        return out;
+    }
+
+    // Interns zone ids to dense ordinals so per-zone inputs can live in plain arrays.
+    public static final class ZoneIndex {
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        public int intern(String zone) {
+            Integer existing = ordinals.get(zone);
+            if (existing != null) return existing;
+            int ordinal = names.size();
+            ordinals.put(zone, ordinal);
+            names.add(zone);
+            return ordinal;
+        }
+
+        public int ordinalOf(String zone) {
+            Integer ordinal = ordinals.get(zone);
+            return ordinal == null ? -1 : ordinal;
+        }
+
+        public String name(int ordinal) {
+            return names.get(ordinal);
+        }
+
+        public int size() {
+            return names.size();
+        }
+    }
+
+    // Reusable result buffer; arrays only grow, and size is the zone count of the last call.
+    public static final class Scores {
+        private double[] ridesScore;
+        private Level[] ridesLevel;
+        private double[] eatsScore;
+        private Level[] eatsLevel;
+        private String[] recommendation;
+        private int size;
+
+        public Scores(int capacity) {
+            allocate(capacity);
+        }
+
+        public int size() { return size; }
+        public double ridesScore(int z) { return ridesScore[z]; }
+        public Level ridesLevel(int z) { return ridesLevel[z]; }
+        public double eatsScore(int z) { return eatsScore[z]; }
+        public Level eatsLevel(int z) { return eatsLevel[z]; }
+        public String recommendation(int z) { return recommendation[z]; }
+
+        public ZoneDemand toZoneDemand(int z) {
+            return new ZoneDemand(ridesScore[z], ridesLevel[z].getLabel(), eatsScore[z], eatsLevel[z].getLabel(), recommendation[z]);
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > ridesScore.length) {
+                allocate(Math.max(capacity, ridesScore.length * 2));
+            }
+        }
+
+        private void allocate(int capacity) {
+            ridesScore = new double[capacity];
+            ridesLevel = new Level[capacity];
+            eatsScore = new double[capacity];
+            eatsLevel = new Level[capacity];
+            recommendation = new String[capacity];
+        }
     }
 
     public static class ZoneDemand {
@@ -0,0 +1,58 @@
+package com.attentionseekers.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Event counts indexed by [dataset][city][dayOfWeek][hour], with the busiest hour of each
+ * (dataset, city, dayOfWeek) kept alongside so per-city signals are two array reads.
+ * Each city owns its own atomic row, so live events for different cities never contend.
+ */
+public class DemandCube {
+
+    private static final int DAYS = 7;
+    private static final int HOURS = 24;
+    private static final int DATASETS = EventDataset.values().length;
+
+    private final ConcurrentHashMap<Integer, CityRow> cities = new ConcurrentHashMap<>();
+
+    public DemandCube(TripEventStore store) {
+        for (EventDataset dataset : EventDataset.values()) {
+            TripEventStore.Columns c = store.columns(dataset);
+            for (int i = 0; i < c.size(); i++) {
+                record(dataset, c.cityId[i], c.dayOfWeek(i), c.hour(i));
+            }
+        }
+    }
+
+    public void record(EventDataset dataset, int cityId, int dayOfWeek, int hour) {
+        record(dataset, cityId, dayOfWeek, hour, 1);
+    }
+
+    public void record(EventDataset dataset, int cityId, int dayOfWeek, int hour, int events) {
+        if (cityId <= 0) return;
+        CityRow row = cities.computeIfAbsent(cityId, c -> new CityRow());
+        int count = row.counts.addAndGet(cell(dataset, dayOfWeek, hour), events);
+        row.weekdayMax.accumulateAndGet(dataset.ordinal() * DAYS + (dayOfWeek - 1), count, Math::max);
+    }
+
+    public int count(EventDataset dataset, int cityId, int dayOfWeek, int hour) {
+        CityRow row = cities.get(cityId);
+        return row == null ? 0 : row.counts.get(cell(dataset, dayOfWeek, hour));
+    }
+
+    public int maxForWeekday(EventDataset dataset, int cityId, int dayOfWeek) {
+        CityRow row = cities.get(cityId);
+        return row == null ? 0 : row.weekdayMax.get(dataset.ordinal() * DAYS + (dayOfWeek - 1));
+    }
+
+    // dayOfWeek is ISO (Monday = 1)
+    private static int cell(EventDataset dataset, int dayOfWeek, int hour) {
+        return (dataset.ordinal() * DAYS + (dayOfWeek - 1)) * HOURS + hour;
+    }
+
+    private static final class CityRow {
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(DATASETS * DAYS * HOURS);
+        private final AtomicIntegerArray weekdayMax = new AtomicIntegerArray(DATASETS * DAYS);
+    }
+}
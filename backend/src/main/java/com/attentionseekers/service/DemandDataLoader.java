@@ -1,58 +1,85 @@
 package com.attentionseekers.service;
 
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Collections;
-import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 @Component
 public class DemandDataLoader {
 
-    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private static final List<String> ZONES = List.of("A", "B", "C");
+    private static final int BUCKETS = DemandBucket.values().length;
+    private static final int ZONE_ROW_SIZE = EventDataset.values().length * BUCKETS * ZONES.size();
 
-    private final EnumMap<DemandBucket, Map<String, Double>> ridesSignals;
-    private final EnumMap<DemandBucket, Map<String, Double>> eatsSignals;
-    private final ResourceLoader resourceLoader;
+    private final TripEventStore eventStore;
+    private final DataSnapshots snapshots;
+    private final DataSnapshot.Part<Counts> counts;
+    private final LiveEventDeltas liveEvents = new LiveEventDeltas();
 
     public DemandDataLoader(ResourceLoader resourceLoader) {
-        this.resourceLoader = resourceLoader;
-        this.ridesSignals = loadSignals(resourceLoader, "classpath:data/rides_trips.csv");
-        this.eatsSignals = loadSignals(resourceLoader, "classpath:data/eats_orders.csv");
+        this(new TripEventStore(resourceLoader));
+    }
+
+    @Autowired
+    public DemandDataLoader(TripEventStore eventStore) {
+        this.eventStore = eventStore;
+        this.snapshots = eventStore.snapshots();
+        this.counts = snapshots.register(Counts.build(eventStore));
+    }
+
+    // Counts are rebuilt from the staged store; replayLiveEvents then adds the ingested events back.
+    void prepareReload(TripEventStore staged, DataSnapshot.Builder next) {
+        next.put(counts, Counts.build(staged));
+    }
+
+    // Call while liveEvents() is paused, right before the staged snapshot is published.
+    void replayLiveEvents(DataSnapshot.Builder next) {
+        Counts c = next.get(counts);
+        liveEvents.forEach((dataset, cityId, dayOfWeek, hour, pickupHex, events) -> {
+            c.cube.record(dataset, cityId, dayOfWeek, hour, events);
+            c.recordZone(dataset, cityId, DemandBucket.fromHour(hour), pickupHex, events);
+        });
+    }
+
+    LiveEventDeltas liveEvents() {
+        return liveEvents;
+    }
+
+    private Counts counts() {
+        return snapshots.current().get(counts);
+    }
+
+    // Live events go to the latest snapshot, even from a request pinned to an older one, and are
+    // kept for replay into the next.
+    public void record(EventDataset dataset, int cityId, int epochMinute, long pickupHex) {
+        liveEvents.add(dataset, cityId, epochMinute, pickupHex);
+        Counts c = snapshots.latest().get(counts);
+        int hour = TripEventStore.hourOf(epochMinute);
+        c.cube.record(dataset, cityId, TripEventStore.dayOfWeekOf(epochMinute), hour);
+        c.recordZone(dataset, cityId, DemandBucket.fromHour(hour), pickupHex, 1);
     }
 
     public Map<String, Double> ridesFor(DemandBucket bucket, int cityId) {
-        EnumMap<DemandBucket, Map<String, Integer>> counts = loadSignalsForCity(resourceLoader, "classpath:data/rides_trips.csv", cityId);
-        ensureBuckets(counts);
-        EnumMap<DemandBucket, Map<String, Double>> normalized = normalize(counts);
-        return normalized.getOrDefault(bucket, emptySignal());
+        return normalizedZones(EventDataset.RIDES, bucket, counts().byCity.get(cityId));
     }
 
     public Map<String, Double> eatsFor(DemandBucket bucket, int cityId) {
-        EnumMap<DemandBucket, Map<String, Integer>> counts = loadSignalsForCity(resourceLoader, "classpath:data/eats_orders.csv", cityId);
-        ensureBuckets(counts);
-        EnumMap<DemandBucket, Map<String, Double>> normalized = normalize(counts);
-        return normalized.getOrDefault(bucket, emptySignal());
+        return normalizedZones(EventDataset.EATS, bucket, counts().byCity.get(cityId));
     }
 
     public Map<String, Double> ridesFor(DemandBucket bucket) {
-        return ridesSignals.getOrDefault(bucket, emptySignal());
+        return normalizedZones(EventDataset.RIDES, bucket, counts().allCities);
     }
 
     public Map<String, Double> eatsFor(DemandBucket bucket) {
-        return eatsSignals.getOrDefault(bucket, emptySignal());
+        return normalizedZones(EventDataset.EATS, bucket, counts().allCities);
     }
 
     public List<String> zones() {
@@ -60,234 +87,81 @@ public class DemandDataLoader {
     }
 
     public ResourceLoader getResourceLoader() {
-        return this.resourceLoader;
+        return eventStore.getResourceLoader();
+    }
+
+    public TripEventStore getEventStore() {
+        return eventStore;
     }
 
     public java.util.List<Integer> getAvailableCityIds() {
-        java.util.Set<Integer> cities = new java.util.TreeSet<>();
-        Resource resource = resourceLoader.getResource("classpath:data/rides_trips.csv");
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-            String header = reader.readLine();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) continue;
-                String[] fields = line.split("", -1);
-                if (fields.length <= 3) continue;
-                try {
-                    int cityId = Integer.parseInt(fields[3]);
-                    if (cityId > 0) cities.add(cityId);
-                } catch (Exception ignored) {}
-            }
-        } catch (IOException e) {
-        }
-        return new java.util.ArrayList<>(cities);
+        return eventStore.cityIds();
     }
 
     public double ridesSignalForCity(DemandBucket bucket, int cityId) {
-        EnumMap<DemandBucket, Map<String, Integer>> counts = loadSignalsForCity(resourceLoader, "classpath:data/rides_trips.csv", cityId);
-        ensureBuckets(counts);
-        int value = totalForBucket(counts, bucket);
-        int max = counts.values().stream().mapToInt(m -> m.values().stream().mapToInt(Integer::intValue).sum()).max().orElse(0);
-        return max == 0 ? 0.0 : round(((double) value) / max);
+        return bucketSignalForCity(EventDataset.RIDES, bucket, cityId);
     }
 
     public double eatsSignalForCity(DemandBucket bucket, int cityId) {
-        EnumMap<DemandBucket, Map<String, Integer>> counts = loadSignalsForCity(resourceLoader, "classpath:data/eats_orders.csv", cityId);
-        ensureBuckets(counts);
-        int value = totalForBucket(counts, bucket);
-        int max = counts.values().stream().mapToInt(m -> m.values().stream().mapToInt(Integer::intValue).sum()).max().orElse(0);
-        return max == 0 ? 0.0 : round(((double) value) / max);
-    }
-
-    private int totalForBucket(EnumMap<DemandBucket, Map<String, Integer>> counts, DemandBucket bucket) {
-        Map<String, Integer> map = counts.get(bucket);
-        if (map == null) return 0;
-        return map.values().stream().mapToInt(Integer::intValue).sum();
-    }
-
-    private int countEventsForCityAt(ResourceLoader loader, String location, int wantedCityId, int hour, int dayOfWeek) {
-        Resource resource = loader.getResource(location);
-        int count = 0;
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-            String header = reader.readLine();
-            if (header == null) return 0;
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) continue;
-                String[] fields = line.split(",", -1);
-                if (fields.length <= 7) continue;
-                try {
-                    int cityIdIdx = findHeaderIndex(header, "city_id", 3);
-                    int startTimeIdx = findHeaderIndex(header, "start_time", 7);
-                    String cityRaw = safeGet(fields, cityIdIdx);
-                    int cityId = Integer.parseInt(cityRaw);
-                    if (cityId != wantedCityId) continue;
-                    String startTimeRaw = safeGet(fields, startTimeIdx);
-                    LocalDateTime startTime = LocalDateTime.parse(startTimeRaw, DATE_TIME);
-                    if (startTime.getHour() == hour && startTime.getDayOfWeek().getValue() == dayOfWeek) {
-                        count++;
-                    }
-                } catch (Exception ignored) {}
-            }
-        } catch (IOException e) {
-        }
-        return count;
+        return bucketSignalForCity(EventDataset.EATS, bucket, cityId);
     }
 
-    private int maxEventsForCityWeekday(ResourceLoader loader, String location, int wantedCityId, int dayOfWeek) {
+    private double bucketSignalForCity(EventDataset dataset, DemandBucket bucket, int cityId) {
+        AtomicIntegerArray row = counts().byCity.get(cityId);
+        if (row == null) return 0.0;
+        int value = 0;
         int max = 0;
-        for (int h = 0; h < 24; h++) {
-            int c = countEventsForCityAt(loader, location, wantedCityId, h, dayOfWeek);
-            if (c > max) max = c;
+        for (DemandBucket b : DemandBucket.values()) {
+            int total = 0;
+            for (int z = 0; z < ZONES.size(); z++) {
+                total += row.get(zoneCell(dataset, b, z));
+            }
+            if (b == bucket) value = total;
+            if (total > max) max = total;
         }
-        return max;
+        return max == 0 ? 0.0 : round(((double) value) / max);
     }
 
     public double ridesSignalForCityAt(java.time.LocalDateTime dt, int cityId) {
-        int hour = dt.getHour();
-        int dow = dt.getDayOfWeek().getValue();
-        int count = countEventsForCityAt(resourceLoader, "classpath:data/rides_trips.csv", cityId, hour, dow);
-        int max = maxEventsForCityWeekday(resourceLoader, "classpath:data/rides_trips.csv", cityId, dow);
-        return max == 0 ? 0.0 : round(((double) count) / max);
+        return signalForCityAt(EventDataset.RIDES, dt, cityId);
     }
 
     public double eatsSignalForCityAt(java.time.LocalDateTime dt, int cityId) {
-        int hour = dt.getHour();
+        return signalForCityAt(EventDataset.EATS, dt, cityId);
+    }
+
+    private double signalForCityAt(EventDataset dataset, java.time.LocalDateTime dt, int cityId) {
+        DemandCube cube = counts().cube;
         int dow = dt.getDayOfWeek().getValue();
-        int count = countEventsForCityAt(resourceLoader, "classpath:data/eats_orders.csv", cityId, hour, dow);
-        int max = maxEventsForCityWeekday(resourceLoader, "classpath:data/eats_orders.csv", cityId, dow);
+        int count = cube.count(dataset, cityId, dow, dt.getHour());
+        int max = cube.maxForWeekday(dataset, cityId, dow);
         return max == 0 ? 0.0 : round(((double) count) / max);
     }
 
-    private EnumMap<DemandBucket, Map<String, Double>> loadSignals(ResourceLoader loader, String location) {
-        Resource resource = loader.getResource(location);
-        EnumMap<DemandBucket, Map<String, Integer>> counts = new EnumMap<>(DemandBucket.class);
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-            String header = reader.readLine();
-            if (header == null) {
-                throw new IllegalStateException("CSV " + location + " is empty");
-            }
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) {
-                    continue;
-                }
-                    String[] fields = line.split(",", -1);
-                    if (fields.length <= 7) {
-                        continue;
-                    }
-                    try {
-                        int cityIdIdx = findHeaderIndex(header, "city_id", 3);
-                        int startTimeIdx = findHeaderIndex(header, "start_time", 7);
-                        int pickupHexIdx = findHeaderIndex(header, "pickup_hex_id9", -1);
-
-                        String startTimeRaw = safeGet(fields, startTimeIdx);
-                        LocalDateTime startTime = LocalDateTime.parse(startTimeRaw, DATE_TIME);
-                        DemandBucket bucket = DemandBucket.from(startTime.toLocalTime());
-
-                        String zone = null;
-                        if (pickupHexIdx >= 0) {
-                            String hex = safeGet(fields, pickupHexIdx);
-                            zone = toZone(hex);
-                        }
-                        if (zone == null) {
-                            String cityRaw = safeGet(fields, cityIdIdx);
-                            int cityId = Integer.parseInt(cityRaw);
-                            zone = toZone(cityId);
-                        }
-
-                        if (zone == null) {
-                            continue;
-                        }
-                        Map<String, Integer> zoneCounts = counts.computeIfAbsent(bucket, b -> new HashMap<>());
-                        zoneCounts.merge(zone, 1, Integer::sum);
-                    } catch (Exception ignored) {
-                    }
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to load " + location, e);
+    private Map<String, Double> normalizedZones(EventDataset dataset, DemandBucket bucket, AtomicIntegerArray row) {
+        if (row == null) return emptySignal();
+        int[] values = new int[ZONES.size()];
+        int max = 0;
+        for (int z = 0; z < values.length; z++) {
+            values[z] = row.get(zoneCell(dataset, bucket, z));
+            if (values[z] > max) max = values[z];
         }
-
-        ensureBuckets(counts);
-        return normalize(counts);
-    }
-
-    private EnumMap<DemandBucket, Map<String, Integer>> loadSignalsForCity(ResourceLoader loader, String location, int wantedCityId) {
-        Resource resource = loader.getResource(location);
-        EnumMap<DemandBucket, Map<String, Integer>> counts = new EnumMap<>(DemandBucket.class);
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-            String header = reader.readLine();
-            if (header == null) {
-                throw new IllegalStateException("CSV " + location + " is empty");
-            }
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) {
-                    continue;
-                }
-                String[] fields = line.split(",", -1);
-                if (fields.length <= 7) {
-                    continue;
-                }
-                try {
-                    int cityIdIdx = findHeaderIndex(header, "city_id", 3);
-                    int startTimeIdx = findHeaderIndex(header, "start_time", 7);
-                    int pickupHexIdx = findHeaderIndex(header, "pickup_hex_id9", -1);
-
-                    String startTimeRaw = safeGet(fields, startTimeIdx);
-                    LocalDateTime startTime = LocalDateTime.parse(startTimeRaw, DATE_TIME);
-                    DemandBucket bucket = DemandBucket.from(startTime.toLocalTime());
-
-                    String cityRaw = safeGet(fields, cityIdIdx);
-                    int cityId = Integer.parseInt(cityRaw);
-                    if (cityId != wantedCityId) continue;
-
-                    String zone = null;
-                    if (pickupHexIdx >= 0) {
-                        String hex = safeGet(fields, pickupHexIdx);
-                        zone = toZone(hex);
-                    }
-                    if (zone == null) {
-                        zone = toZone(cityId);
-                    }
-                    if (zone == null) continue;
-
-                    Map<String, Integer> zoneCounts = counts.computeIfAbsent(bucket, b -> new HashMap<>());
-                    zoneCounts.merge(zone, 1, Integer::sum);
-                } catch (Exception ignored) {
-                    // skip malformed rows
-                }
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to load " + location, e);
+        Map<String, Double> zoneSignals = new LinkedHashMap<>();
+        for (int z = 0; z < values.length; z++) {
+            zoneSignals.put(ZONES.get(z), max == 0 ? 0.0 : round(((double) values[z]) / max));
         }
-
-        return counts;
+        return Collections.unmodifiableMap(zoneSignals);
     }
 
-    private void ensureBuckets(EnumMap<DemandBucket, Map<String, Integer>> counts) {
-        for (DemandBucket bucket : DemandBucket.values()) {
-            Map<String, Integer> zoneCounts = counts.computeIfAbsent(bucket, b -> new HashMap<>());
-            for (String zone : ZONES) {
-                zoneCounts.putIfAbsent(zone, 0);
-            }
-        }
+    private static int zoneCell(EventDataset dataset, DemandBucket bucket, int zone) {
+        return (dataset.ordinal() * BUCKETS + bucket.ordinal()) * ZONES.size() + zone;
     }
 
-    private EnumMap<DemandBucket, Map<String, Double>> normalize(EnumMap<DemandBucket, Map<String, Integer>> counts) {
-        EnumMap<DemandBucket, Map<String, Double>> normalized = new EnumMap<>(DemandBucket.class);
-        for (DemandBucket bucket : DemandBucket.values()) {
-            Map<String, Integer> zoneCounts = counts.get(bucket);
-            double max = zoneCounts.values().stream().mapToInt(Integer::intValue).max().orElse(0);
-            Map<String, Double> zoneSignals = new LinkedHashMap<>();
-            for (String zone : ZONES) {
-                int value = zoneCounts.getOrDefault(zone, 0);
-                double signal = max == 0 ? 0.0 : round(((double) value) / max);
-                zoneSignals.put(zone, signal);
-            }
-            normalized.put(bucket, Collections.unmodifiableMap(zoneSignals));
-        }
-        return normalized;
+    // Index into zones(): the last hex digit when a pickup hex is known, else the city.
+    public static int zoneIndex(int cityId, long pickupHex) {
+        if (pickupHex != 0L) return (int) (pickupHex & 0xF) % ZONES.size();
+        if (cityId <= 0) return -1;
+        return (cityId - 1) % ZONES.size();
     }
 
     private Map<String, Double> emptySignal() {
@@ -302,14 +176,6 @@ public class DemandDataLoader {
         return Math.round(value * 100.0) / 100.0;
     }
 
-    private String toZone(int cityId) {
-        if (cityId <= 0) {
-            return null;
-        }
-        int index = (cityId - 1) % ZONES.size();
-        return ZONES.get(index);
-    }
-
     private String toZone(String hex) {
         if (hex == null || hex.isBlank()) return null;
         String h = hex.trim();
@@ -330,17 +196,38 @@ public class DemandDataLoader {
         return toZone(hex);
     }
 
-    private String safeGet(String[] fields, int idx) {
-        if (idx < 0 || idx >= fields.length) return "";
-        return fields[idx];
+    // Same mapping as toZone(String): the last hex digit picks the zone.
+    public String zoneForHex(long hex) {
+        return ZONES.get(zoneIndex(0, hex));
     }
 
-    private int findHeaderIndex(String headerLine, String name, int fallback) {
-        if (headerLine == null) return fallback;
-        String[] cols = headerLine.split(",", -1);
-        for (int i = 0; i < cols.length; i++) {
-            if (cols[i].trim().equalsIgnoreCase(name)) return i;
+    private static final class Counts {
+        private final DemandCube cube;
+        // [dataset][bucket][zone] counts across every city, and the same layout per city
+        private final AtomicIntegerArray allCities = new AtomicIntegerArray(ZONE_ROW_SIZE);
+        private final ConcurrentHashMap<Integer, AtomicIntegerArray> byCity = new ConcurrentHashMap<>();
+
+        private Counts(DemandCube cube) {
+            this.cube = cube;
+        }
+
+        static Counts build(TripEventStore store) {
+            Counts c = new Counts(new DemandCube(store));
+            for (EventDataset dataset : EventDataset.values()) {
+                TripEventStore.Columns columns = store.columns(dataset);
+                for (int i = 0; i < columns.size(); i++) {
+                    c.recordZone(dataset, columns.cityId[i], columns.bucket(i), columns.pickupHex[i], 1);
+                }
+            }
+            return c;
+        }
+
+        void recordZone(EventDataset dataset, int cityId, DemandBucket bucket, long pickupHex, int events) {
+            int zone = zoneIndex(cityId, pickupHex);
+            if (zone < 0) return;
+            int cell = zoneCell(dataset, bucket, zone);
+            allCities.addAndGet(cell, events);
+            byCity.computeIfAbsent(cityId, k -> new AtomicIntegerArray(ZONE_ROW_SIZE)).addAndGet(cell, events);
         }
-        return fallback;
     }
 }
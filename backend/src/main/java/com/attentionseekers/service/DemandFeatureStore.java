@@ -0,0 +1,450 @@
+package com.attentionseekers.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Surge, heat, incentive, weather and cancellation signals loaded into dense tables.
+ * Cities are 1-based and slot 0 of every city-indexed table holds the all-city aggregate.
+ * Zone tables carry one extra column for the city as a whole, so filling a feature vector
+ * is a fixed number of array reads however many hexes a city has.
+ */
+@Component
+public class DemandFeatureStore {
+
+    private static final int ZONE_COUNT = 3;
+    private static final int ZONE_COLUMNS = ZONE_COUNT + 1;
+    private static final int WHOLE_CITY = ZONE_COUNT;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final double CLEAR_WEATHER = 1.0;
+    private static final double RAIN_WEATHER = 1.15;
+    private static final double SNOW_WEATHER = 1.3;
+
+    private final DataSnapshots snapshots;
+    private final DataSnapshot.Part<Tables> tables;
+
+    public DemandFeatureStore(ResourceLoader resourceLoader) {
+        this(new DataSnapshots(resourceLoader));
+    }
+
+    @Autowired
+    public DemandFeatureStore(DataSnapshots snapshots) {
+        this.snapshots = snapshots;
+        this.tables = snapshots.register(new Tables(snapshots.resourceLoader()));
+    }
+
+    void prepareReload(ResourceLoader resourceLoader, DataSnapshot.Builder next) {
+        next.put(tables, new Tables(resourceLoader));
+    }
+
+    DataSnapshots snapshots() {
+        return snapshots;
+    }
+
+    public int zoneCount() {
+        return ZONE_COUNT;
+    }
+
+    // Fills slots 0..zoneCount()-1 with the zones of one city, or of all cities when cityId <= 0.
+    public void fillZones(int cityId, int epochMinute, Features out) {
+        Tables t = snapshots.current().get(tables);
+        int city = t.cityIndex(cityId);
+        for (int z = 0; z < ZONE_COUNT; z++) {
+            t.fill(city, z, epochMinute, out, z);
+        }
+    }
+
+    // Fills one slot with the city as a whole.
+    public void fillCity(int cityId, int epochMinute, Features out, int slot) {
+        Tables t = snapshots.current().get(tables);
+        t.fill(t.cityIndex(cityId), WHOLE_CITY, epochMinute, out, slot);
+    }
+
+    public double surgeMultiplier(int cityId, int hour) {
+        Tables t = snapshots.current().get(tables);
+        int city = t.cityIndex(cityId);
+        return city < 0 ? 1.0 : t.surgeAt(city, hour);
+    }
+
+    public double hexHeat(long hex) {
+        Tables t = snapshots.current().get(tables);
+        int i = Arrays.binarySearch(t.heatHexes, hex);
+        return i < 0 ? 0.0 : t.heatValues[i];
+    }
+
+    public double hexCancellation(long hex) {
+        Tables t = snapshots.current().get(tables);
+        int i = Arrays.binarySearch(t.cancellationHexes, hex);
+        return i < 0 ? 0.0 : t.cancellationValues[i];
+    }
+
+    public double weatherFactor(int cityId, int epochDay) {
+        Tables t = snapshots.current().get(tables);
+        int city = t.cityIndex(cityId);
+        return city < 0 ? CLEAR_WEATHER : t.weatherAt(city, epochDay);
+    }
+
+    public double incentive(int cityId, int epochDay) {
+        Tables t = snapshots.current().get(tables);
+        int city = t.cityIndex(cityId);
+        return city < 0 ? 0.0 : t.incentiveAt(city, epochDay);
+    }
+
+    // Everything read from the data files; replaced as a whole on reload.
+    private static final class Tables {
+        private final int cityCount;
+
+        private final SurgeTable surge;
+        private final long[] heatHexes;
+        private final double[] heatValues;
+        private final long[] cancellationHexes;
+        private final double[] cancellationValues;
+        private final double[] zoneHeat;
+        private final double[] zoneCancellation;
+
+        private int firstWeatherDay;
+        private double[] weather;
+        private double[] typicalWeather;
+
+        private int firstIncentiveDay;
+        private double[] incentives;
+        private double[] typicalIncentives;
+
+        Tables(ResourceLoader resourceLoader) {
+            List<String[]> surgeRows = TripEventStore.readRows(resourceLoader, "classpath:data/surge_by_hour.csv");
+            List<String[]> heatRows = TripEventStore.readRows(resourceLoader, "classpath:data/heatmap.csv");
+            List<String[]> cancellationRows = TripEventStore.readRows(resourceLoader, "classpath:data/cancellation_rates.csv");
+            List<String[]> weatherRows = TripEventStore.readRows(resourceLoader, "classpath:data/weather_daily.csv");
+            List<String[]> incentiveRows = TripEventStore.readRows(resourceLoader, "classpath:data/incentives_weekly.csv");
+            List<String[]> earnerRows = TripEventStore.readRows(resourceLoader, "classpath:data/earners.csv");
+
+            int maxCity = 0;
+            maxCity = Math.max(maxCity, maxCity(surgeRows, "city_id"));
+            maxCity = Math.max(maxCity, maxCity(heatRows, "msg.city_id", "city_id"));
+            maxCity = Math.max(maxCity, maxCity(cancellationRows, "city_id"));
+            maxCity = Math.max(maxCity, maxCity(weatherRows, "city_id"));
+            maxCity = Math.max(maxCity, maxCity(earnerRows, "home_city_id", "city_id"));
+            this.cityCount = maxCity + 1;
+
+            this.surge = SurgeTable.fromRows(surgeRows);
+
+            HexValues heat = loadHexValues(heatRows, "msg.predictions.hexagon_id_9", "msg.predictions.predicted_eph", null, true);
+            this.heatHexes = heat.hex;
+            this.heatValues = heat.value;
+            this.zoneHeat = zoneAverages(heat);
+
+            HexValues cancellation = loadHexValues(cancellationRows, "hexagon_id9", "cancellation_rate_pct", "job_count", false);
+            this.cancellationHexes = cancellation.hex;
+            this.cancellationValues = cancellation.value;
+            this.zoneCancellation = zoneAverages(cancellation);
+
+            loadWeather(weatherRows);
+            loadIncentives(incentiveRows, earnerRows);
+        }
+
+        private double weatherAt(int city, int epochDay) {
+            int day = epochDay - firstWeatherDay;
+            double v = day >= 0 && day * cityCount < weather.length ? weather[day * cityCount + city] : Double.NaN;
+            return Double.isNaN(v) ? typicalWeather[city] : v;
+        }
+
+        private double incentiveAt(int city, int epochDay) {
+            int week = Math.floorDiv(epochDay - firstIncentiveDay, 7);
+            double v = week >= 0 && week * cityCount < incentives.length ? incentives[week * cityCount + city] : Double.NaN;
+            return Double.isNaN(v) ? typicalIncentives[city] : v;
+        }
+
+        private void fill(int city, int zoneColumn, int epochMinute, Features out, int slot) {
+            if (city < 0) {
+                out.surge[slot] = 0.0;
+                out.heat[slot] = 0.0;
+                out.incentives[slot] = 0.0;
+                out.weather[slot] = CLEAR_WEATHER;
+                out.cancellation[slot] = 0.0;
+                return;
+            }
+            int epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+            double multiplier = surgeAt(city, TripEventStore.hourOf(epochMinute));
+            out.surge[slot] = Math.max(0.0, Math.min(1.0, multiplier - 1.0));
+            out.heat[slot] = zoneHeat[city * ZONE_COLUMNS + zoneColumn];
+            out.cancellation[slot] = zoneCancellation[city * ZONE_COLUMNS + zoneColumn];
+            out.weather[slot] = weatherAt(city, epochDay);
+            out.incentives[slot] = incentiveAt(city, epochDay);
+        }
+
+        private double surgeAt(int city, int hour) {
+            return city == 0 ? surge.averageSurge(hour) : surge.surge(city, hour);
+        }
+
+        // cityId <= 0 means all cities (slot 0); cities we have no data for get -1.
+        private int cityIndex(int cityId) {
+            if (cityId <= 0) return 0;
+            return cityId < cityCount ? cityId : -1;
+        }
+
+        // Percentages are scaled to 0..1; with normalizeByCity each value is divided by its city's maximum.
+        private HexValues loadHexValues(List<String[]> rows, String hexColumn, String valueColumn, String weightColumn, boolean normalizeByCity) {
+            String[] header = rows.get(0);
+            int cityIdx = TripEventStore.findHeaderIndex(header, 0, "msg.city_id", "city_id");
+            int hexIdx = TripEventStore.findHeaderIndex(header, -1, hexColumn);
+            int valueIdx = TripEventStore.findHeaderIndex(header, -1, valueColumn);
+            int weightIdx = weightColumn == null ? -1 : TripEventStore.findHeaderIndex(header, -1, weightColumn);
+            boolean percent = valueColumn.endsWith("_pct");
+
+            // keyed by hex so rows come out sorted; a hex listed twice keeps its last row
+            TreeMap<Long, double[]> byHex = new TreeMap<>();
+            double[] cityMax = new double[cityCount];
+            for (int r = 1; r < rows.size(); r++) {
+                String[] fields = rows.get(r);
+                int city = parseInt(TripEventStore.safeGet(fields, cityIdx));
+                long hex = TripEventStore.parseHex(TripEventStore.safeGet(fields, hexIdx));
+                double value = TripEventStore.parseDouble(TripEventStore.safeGet(fields, valueIdx), Double.NaN);
+                if (city <= 0 || city >= cityCount || hex == 0L || Double.isNaN(value)) continue;
+                if (percent) value /= 100.0;
+                double weight = weightIdx < 0 ? 1.0 : TripEventStore.parseDouble(TripEventStore.safeGet(fields, weightIdx), 1.0);
+                byHex.put(hex, new double[]{city, value, weight});
+                cityMax[city] = Math.max(cityMax[city], value);
+            }
+
+            HexValues out = new HexValues(byHex.size());
+            int i = 0;
+            for (Map.Entry<Long, double[]> e : byHex.entrySet()) {
+                double[] row = e.getValue();
+                int city = (int) row[0];
+                out.hex[i] = e.getKey();
+                out.city[i] = city;
+                out.value[i] = !normalizeByCity ? row[1] : cityMax[city] == 0.0 ? 0.0 : row[1] / cityMax[city];
+                out.weight[i] = row[2];
+                i++;
+            }
+            return out;
+        }
+
+        // Weighted mean of the hex values per [city][zone], plus the whole-city column.
+        private double[] zoneAverages(HexValues hexValues) {
+            double[] sum = new double[cityCount * ZONE_COLUMNS];
+            double[] weight = new double[cityCount * ZONE_COLUMNS];
+            for (int i = 0; i < hexValues.hex.length; i++) {
+                int zone = DemandDataLoader.zoneIndex(hexValues.city[i], hexValues.hex[i]);
+                double w = hexValues.weight[i];
+                double v = hexValues.value[i] * w;
+                addZone(sum, weight, 0, zone, v, w);
+                addZone(sum, weight, hexValues.city[i], zone, v, w);
+            }
+            double[] out = new double[sum.length];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = weight[i] == 0.0 ? 0.0 : sum[i] / weight[i];
+            }
+            return out;
+        }
+
+        private void loadWeather(List<String[]> rows) {
+            String[] header = rows.get(0);
+            int dateIdx = TripEventStore.findHeaderIndex(header, 0, "date");
+            int cityIdx = TripEventStore.findHeaderIndex(header, 1, "city_id");
+            int weatherIdx = TripEventStore.findHeaderIndex(header, 2, "weather");
+
+            int first = Integer.MAX_VALUE;
+            int last = Integer.MIN_VALUE;
+            int[] days = new int[rows.size()];
+            for (int r = 1; r < rows.size(); r++) {
+                days[r] = parseDay(TripEventStore.safeGet(rows.get(r), dateIdx));
+                if (days[r] == Integer.MIN_VALUE) continue;
+                first = Math.min(first, days[r]);
+                last = Math.max(last, days[r]);
+            }
+            this.firstWeatherDay = first == Integer.MAX_VALUE ? 0 : first;
+            int dayCount = first == Integer.MAX_VALUE ? 0 : last - first + 1;
+
+            double[] sum = new double[dayCount * cityCount];
+            int[] n = new int[dayCount * cityCount];
+            double[] citySum = new double[cityCount];
+            int[] cityN = new int[cityCount];
+            for (int r = 1; r < rows.size(); r++) {
+                String[] fields = rows.get(r);
+                int city = parseInt(TripEventStore.safeGet(fields, cityIdx));
+                double factor = toWeatherFactor(TripEventStore.safeGet(fields, weatherIdx));
+                if (days[r] == Integer.MIN_VALUE || city <= 0 || city >= cityCount || Double.isNaN(factor)) continue;
+                int row = (days[r] - firstWeatherDay) * cityCount;
+                sum[row] += factor;
+                n[row]++;
+                sum[row + city] += factor;
+                n[row + city]++;
+                citySum[0] += factor;
+                cityN[0]++;
+                citySum[city] += factor;
+                cityN[city]++;
+            }
+            this.weather = averages(sum, n, Double.NaN);
+            this.typicalWeather = averages(citySum, cityN, CLEAR_WEATHER);
+        }
+
+        // Bonus money offered per city and ISO week, scaled so the busiest week of any city is 1.0.
+        private void loadIncentives(List<String[]> rows, List<String[]> earnerRows) {
+            String[] earnerHeader = earnerRows.get(0);
+            int earnerIdIdx = TripEventStore.findHeaderIndex(earnerHeader, 0, "earner_id");
+            int homeCityIdx = TripEventStore.findHeaderIndex(earnerHeader, -1, "home_city_id", "city_id");
+            Map<String, Integer> homeCity = new HashMap<>();
+            for (int r = 1; r < earnerRows.size(); r++) {
+                String[] fields = earnerRows.get(r);
+                homeCity.put(TripEventStore.safeGet(fields, earnerIdIdx).trim(), parseInt(TripEventStore.safeGet(fields, homeCityIdx)));
+            }
+
+            String[] header = rows.get(0);
+            int earnerIdx = TripEventStore.findHeaderIndex(header, 0, "earner_id");
+            int weekIdx = TripEventStore.findHeaderIndex(header, 1, "week");
+            int bonusIdx = TripEventStore.findHeaderIndex(header, -1, "bonus_eur");
+
+            int first = Integer.MAX_VALUE;
+            int last = Integer.MIN_VALUE;
+            int[] mondays = new int[rows.size()];
+            for (int r = 1; r < rows.size(); r++) {
+                mondays[r] = parseIsoWeek(TripEventStore.safeGet(rows.get(r), weekIdx));
+                if (mondays[r] == Integer.MIN_VALUE) continue;
+                first = Math.min(first, mondays[r]);
+                last = Math.max(last, mondays[r]);
+            }
+            this.firstIncentiveDay = first == Integer.MAX_VALUE ? 0 : first;
+            int weekCount = first == Integer.MAX_VALUE ? 0 : (last - first) / 7 + 1;
+
+            double[] bonus = new double[weekCount * cityCount];
+            for (int r = 1; r < rows.size(); r++) {
+                String[] fields = rows.get(r);
+                if (mondays[r] == Integer.MIN_VALUE) continue;
+                double amount = TripEventStore.parseDouble(TripEventStore.safeGet(fields, bonusIdx), 0.0);
+                int row = (mondays[r] - firstIncentiveDay) / 7 * cityCount;
+                bonus[row] += amount;
+                Integer city = homeCity.get(TripEventStore.safeGet(fields, earnerIdx).trim());
+                if (city != null && city > 0 && city < cityCount) {
+                    bonus[row + city] += amount;
+                }
+            }
+
+            double cityMax = 0.0;
+            double allMax = 0.0;
+            for (int i = 0; i < bonus.length; i++) {
+                if (i % cityCount == 0) allMax = Math.max(allMax, bonus[i]);
+                else cityMax = Math.max(cityMax, bonus[i]);
+            }
+            double[] citySum = new double[cityCount];
+            int[] cityN = new int[cityCount];
+            for (int i = 0; i < bonus.length; i++) {
+                double max = i % cityCount == 0 ? allMax : cityMax;
+                bonus[i] = max == 0.0 ? 0.0 : bonus[i] / max;
+                citySum[i % cityCount] += bonus[i];
+                cityN[i % cityCount]++;
+            }
+            this.incentives = bonus;
+            this.typicalIncentives = averages(citySum, cityN, 0.0);
+        }
+    }
+
+    private static void addZone(double[] sum, double[] weight, int city, int zone, double v, double w) {
+        sum[city * ZONE_COLUMNS + zone] += v;
+        weight[city * ZONE_COLUMNS + zone] += w;
+        sum[city * ZONE_COLUMNS + WHOLE_CITY] += v;
+        weight[city * ZONE_COLUMNS + WHOLE_CITY] += w;
+    }
+
+
+    private static double[] averages(double[] sum, int[] n, double empty) {
+        double[] out = new double[sum.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = n[i] == 0 ? empty : sum[i] / n[i];
+        }
+        return out;
+    }
+
+    private static double toWeatherFactor(String raw) {
+        switch (raw.trim().toLowerCase()) {
+            case "clear": return CLEAR_WEATHER;
+            case "rain": return RAIN_WEATHER;
+            case "snow": return SNOW_WEATHER;
+            default: return Double.NaN;
+        }
+    }
+
+    private static int maxCity(List<String[]> rows, String... names) {
+        int idx = TripEventStore.findHeaderIndex(rows.get(0), -1, names);
+        int max = 0;
+        for (int r = 1; r < rows.size(); r++) {
+            max = Math.max(max, parseInt(TripEventStore.safeGet(rows.get(r), idx)));
+        }
+        return max;
+    }
+
+    private static int parseInt(String raw) {
+        try {
+            return Integer.parseInt(raw.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int parseDay(String raw) {
+        try {
+            return (int) LocalDate.parse(raw.trim()).toEpochDay();
+        } catch (RuntimeException e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    // "2023-W02" -> epoch day of that week's Monday
+    private static int parseIsoWeek(String raw) {
+        String s = raw.trim();
+        int w = s.indexOf("-W");
+        if (w < 0) return Integer.MIN_VALUE;
+        try {
+            int year = Integer.parseInt(s.substring(0, w));
+            int week = Integer.parseInt(s.substring(w + 2));
+            return (int) LocalDate.of(year, 1, 4)
+                    .with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, week)
+                    .with(DayOfWeek.MONDAY)
+                    .toEpochDay();
+        } catch (RuntimeException e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    private static final class HexValues {
+        final long[] hex;
+        final int[] city;
+        final double[] value;
+        final double[] weight;
+
+        HexValues(int n) {
+            hex = new long[n];
+            city = new int[n];
+            value = new double[n];
+            weight = new double[n];
+        }
+    }
+
+    // Per-slot inputs for DemandCalculator; DemandService keeps one per thread and reuses it across requests.
+    public static final class Features {
+        public final double[] surge;
+        public final double[] heat;
+        public final double[] incentives;
+        public final double[] weather;
+        public final double[] cancellation;
+
+        public Features(int slots) {
+            surge = new double[slots];
+            heat = new double[slots];
+            incentives = new double[slots];
+            weather = new double[slots];
+            cancellation = new double[slots];
+        }
+    }
+}
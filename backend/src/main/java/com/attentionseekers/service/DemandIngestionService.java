@@ -0,0 +1,89 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.dto.TripEventRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies live ride and eats events to the in-memory demand counters. Counters are updated
+ * in place, so nothing is rebuilt per event. Each call then bumps the demand data generation of
+ * the cities it touched, once, so only their cached responses are recomputed on the next read.
+ */
+@Service
+public class DemandIngestionService {
+
+    private final DemandDataLoader dataLoader;
+    private final HexAggregatorService hexAggregator;
+    private final DemandService demandService;
+    private final RecentDemandTracker recentDemand;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public DemandIngestionService(DemandDataLoader dataLoader, HexAggregatorService hexAggregator,
+                                  DemandService demandService, RecentDemandTracker recentDemand) {
+        this.dataLoader = dataLoader;
+        this.hexAggregator = hexAggregator;
+        this.demandService = demandService;
+        this.recentDemand = recentDemand;
+    }
+
+    public boolean ingest(EventDataset dataset, TripEventRequest event) {
+        int cityId = apply(dataset, event);
+        if (cityId < 0) return false;
+        demandService.dataChanged(Set.of(cityId));
+        return true;
+    }
+
+    public Map<String, Long> ingestAll(EventDataset dataset, List<TripEventRequest> events) {
+        long ok = 0;
+        Set<Integer> cities = new HashSet<>();
+        for (TripEventRequest event : events) {
+            int cityId = apply(dataset, event);
+            if (cityId < 0) continue;
+            cities.add(cityId);
+            ok++;
+        }
+        demandService.dataChanged(cities);
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("accepted", ok);
+        result.put("rejected", (long) events.size() - ok);
+        return result;
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    // The city of the applied event, or -1 when it was rejected.
+    private int apply(EventDataset dataset, TripEventRequest event) {
+        if (event == null || event.getCityId() == null || event.getCityId() <= 0 || event.getStartTime() == null) {
+            rejected.increment();
+            return -1;
+        }
+        int epochMinute;
+        try {
+            epochMinute = TripEventStore.parseEpochMinute(event.getStartTime());
+        } catch (RuntimeException e) {
+            rejected.increment();
+            return -1;
+        }
+        int cityId = event.getCityId();
+        long pickupHex = TripEventStore.parseHex(event.getPickupHexId9());
+        dataLoader.liveEvents().recording(() -> {
+            dataLoader.record(dataset, cityId, epochMinute, pickupHex);
+            hexAggregator.record(dataset, cityId, DemandBucket.fromHour(TripEventStore.hourOf(epochMinute)), pickupHex);
+        });
+        recentDemand.record(dataset, cityId, DemandDataLoader.zoneIndex(cityId, pickupHex), pickupHex, epochMinute);
+        accepted.increment();
+        return cityId;
+    }
+}
@@ -0,0 +1,155 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.dto.DemandResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of demand responses. Each entry carries its own expiry so callers can align it
+ * with hour/bucket boundaries, plus the data generation it was computed from, so an entry stops
+ * being served as soon as the underlying counters change. Concurrent misses on the same key
+ * share a single computation.
+ */
+public class DemandResponseCache {
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DemandResponseCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // generation must be read before the loader reads any data, so a change made mid-computation
+    // leaves the entry already stale.
+    public DemandResponse get(Key key, long generation, long nowMillis, long expiresAtMillis,
+                              Supplier<DemandResponse> loader) {
+        while (true) {
+            Entry current = entries.get(key);
+            if (current != null && current.expiresAtMillis > nowMillis && current.generation == generation) {
+                hits.increment();
+                try {
+                    return current.future.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException cause) throw cause;
+                    throw e;
+                }
+            }
+
+            Entry fresh = new Entry(expiresAtMillis, generation, sequence.incrementAndGet());
+            boolean won = current == null
+                    ? entries.putIfAbsent(key, fresh) == null
+                    : entries.replace(key, current, fresh);
+            if (!won) {
+                continue;
+            }
+
+            misses.increment();
+            if (current != null) {
+                evictions.increment();
+            }
+            try {
+                DemandResponse value = loader.get();
+                fresh.future.complete(value);
+                evictIfFull(nowMillis);
+                return value;
+            } catch (RuntimeException e) {
+                entries.remove(key, fresh);
+                fresh.future.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    public void clear() {
+        evictions.add(entries.size());
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("size", (long) entries.size());
+        return stats;
+    }
+
+    private void evictIfFull(long nowMillis) {
+        if (entries.size() <= maxEntries) return;
+        entries.forEach((k, e) -> {
+            if (e.expiresAtMillis <= nowMillis && entries.remove(k, e)) {
+                evictions.increment();
+            }
+        });
+        while (entries.size() > maxEntries) {
+            Map.Entry<Key, Entry> oldest = null;
+            for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+                if (oldest == null || e.getValue().sequence < oldest.getValue().sequence) {
+                    oldest = e;
+                }
+            }
+            if (oldest == null) return;
+            if (entries.remove(oldest.getKey(), oldest.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<DemandResponse> future = new CompletableFuture<>();
+        private final long expiresAtMillis;
+        private final long generation;
+        private final long sequence;
+
+        private Entry(long expiresAtMillis, long generation, long sequence) {
+            this.expiresAtMillis = expiresAtMillis;
+            this.generation = generation;
+            this.sequence = sequence;
+        }
+    }
+
+    public static final class Key {
+        private final long version;
+        private final DemandBucket bucket;
+        private final String label;
+        private final UserType userType;
+        private final int cityId;
+
+        public Key(long version, DemandBucket bucket, String label, UserType userType, int cityId) {
+            this.version = version;
+            this.bucket = bucket;
+            this.label = label;
+            this.userType = userType;
+            this.cityId = cityId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return version == that.version && cityId == that.cityId && bucket == that.bucket && userType == that.userType && Objects.equals(label, that.label);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, bucket, label, userType, cityId);
+        }
+    }
+}
@@ -6,11 +6,17 @@ import com.attentionseekers.dto.DriverDemandDto;
 import com.attentionseekers.service.DemandCalculator;
 import com.attentionseekers.service.UserType;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -20,15 +26,29 @@ public class DemandService {
 
     private final DemandDataLoader dataLoader;
     private final HexAggregatorService hexAggregator;
+    private final RecentDemandTracker recentDemand;
+    private final DemandFeatureStore features;
+    private final DataSnapshots snapshots;
+    private static final int RESPONSE_CACHE_SIZE = 512;
+    private static final Duration DEFAULT_RECENT_HALF_LIFE = Duration.ofMinutes(30);
+
     private final ZoneId zoneId;
+    private final Clock clock;
+    private final DemandResponseCache responseCache = new DemandResponseCache(RESPONSE_CACHE_SIZE);
+    // bumped whenever the counters behind cached responses change: per city for city responses,
+    // and once for the responses that cover every city
+    private final ConcurrentHashMap<Integer, AtomicLong> cityGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong allCitiesGeneration = new AtomicLong();
+    private final ThreadLocal<ScoringBuffers> buffers;
 
     @Autowired
-    public DemandService(DemandDataLoader dataLoader, HexAggregatorService hexAggregator) {
-        this(dataLoader, hexAggregator, ZoneId.systemDefault());
+    public DemandService(DemandDataLoader dataLoader, HexAggregatorService hexAggregator, RecentDemandTracker recentDemand,
+                         DemandFeatureStore features) {
+        this(dataLoader, hexAggregator, recentDemand, features, Clock.system(ZoneId.systemDefault()));
     }
 
     public DemandService(DemandDataLoader dataLoader, ZoneId zoneId) {
-        this(dataLoader, new HexAggregatorService(dataLoader.getResourceLoader()), zoneId);
+        this(dataLoader, new HexAggregatorService(dataLoader.getEventStore()), zoneId);
     }
 
     public java.util.List<Integer> availableCityIds() {
@@ -36,19 +56,54 @@ public class DemandService {
     }
 
     DemandService(DemandDataLoader dataLoader, HexAggregatorService hexAggregator, ZoneId zoneId) {
+        this(dataLoader, hexAggregator, new RecentDemandTracker(DEFAULT_RECENT_HALF_LIFE, Clock.system(zoneId)),
+                new DemandFeatureStore(dataLoader.getEventStore().snapshots()), Clock.system(zoneId));
+    }
+
+    DemandService(DemandDataLoader dataLoader, HexAggregatorService hexAggregator, RecentDemandTracker recentDemand,
+                  DemandFeatureStore features, Clock clock) {
         this.dataLoader = dataLoader;
         this.hexAggregator = hexAggregator;
-        this.zoneId = zoneId;
+        this.recentDemand = recentDemand;
+        this.features = features;
+        this.snapshots = dataLoader.getEventStore().snapshots();
+        this.zoneId = clock.getZone();
+        this.clock = clock;
+        this.buffers = ThreadLocal.withInitial(() -> new ScoringBuffers(features.zoneCount()));
+    }
+
+    public Map<String, Long> cacheStats() {
+        return responseCache.stats();
+    }
+
+    public void invalidateCache() {
+        cityGenerations.values().forEach(AtomicLong::incrementAndGet);
+        allCitiesGeneration.incrementAndGet();
+        responseCache.clear();
+    }
+
+    // Called once per ingested batch with the cities its events touched; cached responses for
+    // those cities and for all cities together are recomputed on their next read.
+    public void dataChanged(Collection<Integer> cityIds) {
+        if (cityIds.isEmpty()) return;
+        for (int cityId : cityIds) {
+            generation(cityId).incrementAndGet();
+        }
+        allCitiesGeneration.incrementAndGet();
+    }
+
+    private AtomicLong generation(int cityId) {
+        return cityId > 0 ? cityGenerations.computeIfAbsent(cityId, c -> new AtomicLong()) : allCitiesGeneration;
     }
 
     public DemandResponse getCurrentDemand() {
-        ZonedDateTime now = ZonedDateTime.now(zoneId);
+        ZonedDateTime now = ZonedDateTime.now(clock);
         DemandBucket bucket = DemandBucket.from(now.toLocalTime());
         return buildResponse(bucket, "now", UserType.RIDER, -1);
     }
 
     public DemandResponse getNext2HoursDemand() {
-        ZonedDateTime future = ZonedDateTime.now(zoneId).plusHours(2);
+        ZonedDateTime future = ZonedDateTime.now(clock).plusHours(2);
         DemandBucket bucket = DemandBucket.from(future.toLocalTime());
         return buildResponse(bucket, "next2h", UserType.RIDER, -1);
     }
@@ -66,17 +121,54 @@ public class DemandService {
     }
 
     public DemandResponse getCurrentDemand(UserType userType, int cityId) {
-        ZonedDateTime now = ZonedDateTime.now(zoneId);
+        ZonedDateTime now = ZonedDateTime.now(clock);
         DemandBucket bucket = DemandBucket.from(now.toLocalTime());
         return buildResponse(bucket, "now", userType, cityId);
     }
 
     public DemandResponse getNext2HoursDemand(UserType userType, int cityId) {
-        ZonedDateTime future = ZonedDateTime.now(zoneId).plusHours(2);
+        ZonedDateTime future = ZonedDateTime.now(clock).plusHours(2);
         DemandBucket bucket = DemandBucket.from(future.toLocalTime());
         return buildResponse(bucket, "next2h", userType, cityId);
     }
 
+    // Demand from live events only, weighted towards the last half-life instead of all history.
+    public DemandResponse getRecentDemand(UserType userType, int cityId) {
+        Map<String, Double> rides = recentZoneSignal(EventDataset.RIDES, cityId);
+        Map<String, Double> eats = recentZoneSignal(EventDataset.EATS, cityId);
+        int epochMinute = TripEventStore.toEpochMinute(java.time.LocalDateTime.now(clock));
+        return buildZoneResponse("recent", rides, eats, userType, cityId, epochMinute);
+    }
+
+    // Zones with hex-tagged events are scored like the historical hex signal, from the decayed
+    // per-hex counts; the others fall back to their decayed count against the busiest zone.
+    private Map<String, Double> recentZoneSignal(EventDataset dataset, int cityId) {
+        double[] zoneRates = recentDemand.zoneRates(dataset, cityId);
+        Map<Long, Double> hexRates = recentDemand.hexRates(dataset, cityId);
+        double maxHex = 0.0;
+        for (double r : hexRates.values()) {
+            if (r > maxHex) maxHex = r;
+        }
+        double maxZone = 0.0;
+        for (double r : zoneRates) {
+            if (r > maxZone) maxZone = r;
+        }
+        double[] sum = new double[zoneRates.length];
+        double[] weight = new double[zoneRates.length];
+        for (Map.Entry<Long, Double> e : hexRates.entrySet()) {
+            int z = DemandDataLoader.zoneIndex(0, e.getKey());
+            double rate = e.getValue();
+            sum[z] += rate / maxHex * rate;
+            weight[z] += rate;
+        }
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (int z = 0; z < zoneRates.length; z++) {
+            double signal = weight[z] > 0.0 ? sum[z] / weight[z] : (maxZone == 0.0 ? 0.0 : zoneRates[z] / maxZone);
+            out.put(dataLoader.zones().get(z), Math.round(signal * 100.0) / 100.0);
+        }
+        return out;
+    }
+
     public DemandResponse getDemandAt(UserType userType, int cityId, ZonedDateTime dateTime) {
         DemandBucket bucket = DemandBucket.from(dateTime.toLocalTime());
         return buildResponseForDatetime(bucket, "at", userType, cityId, dateTime);
@@ -87,80 +179,27 @@ public class DemandService {
         java.time.LocalDateTime rep = java.time.LocalDateTime.of(dateTime.getYear(), dateTime.getMonth(), dateTime.getDayOfMonth(), dateTime.getHour(), 0);
         double ridesSignal = dataLoader.ridesSignalForCityAt(rep, cityId);
         double eatsSignal = dataLoader.eatsSignalForCityAt(rep, cityId);
-        String key = String.valueOf(cityId);
-        Map<String, Double> rides = new LinkedHashMap<>();
-        Map<String, Double> eats = new LinkedHashMap<>();
-        rides.put(key, ridesSignal);
-        eats.put(key, eatsSignal);
-
-        Map<String, DemandCalculator.ZoneDemand> calculations = DemandCalculator.calculateDemand(
-                rides,
-                eats,
-                null,
-                null,
-                null,
-                null,
-                null,
-                userType == UserType.RIDER ? DemandCalculator.UserType.RIDER : DemandCalculator.UserType.FOOD
-        );
-        Map<String, ZoneDemandDto> out = new LinkedHashMap<>();
-        DemandCalculator.ZoneDemand d = calculations.get(key);
-        if (d == null) {
-            out.put(key, new ZoneDemandDto(0.0, "low", 0.0, "low", "stay"));
-        } else {
-            out.put(key, new ZoneDemandDto(
-                    d.getRidesScore(),
-                    d.getRidesLevel(),
-                    d.getEatsScore(),
-                    d.getEatsLevel(),
-                    d.getRecommendation()
-            ));
-        }
-        return new DemandResponse(Instant.now(), label, out);
+        return buildCityResponse(label, cityId, ridesSignal, eatsSignal, userType, TripEventStore.toEpochMinute(rep));
     }
 
+    // Responses only change when the hour (and with it the bucket or weekday) rolls over, when
+    // live events change the counts, or with the data snapshot, whose version is part of the key.
     private DemandResponse buildResponse(DemandBucket bucket, String label, UserType userType, int cityId) {
+        long generation = generation(cityId).get();
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        long expiresAt = now.truncatedTo(ChronoUnit.HOURS).plusHours(1).toInstant().toEpochMilli();
+        DemandResponseCache.Key key = new DemandResponseCache.Key(snapshots.current().getVersion(),
+                bucket, label, userType, cityId);
+        return responseCache.get(key, generation, now.toInstant().toEpochMilli(), expiresAt,
+                () -> computeResponse(bucket, label, userType, cityId));
+    }
+
+    private DemandResponse computeResponse(DemandBucket bucket, String label, UserType userType, int cityId) {
         if (cityId > 0) {
-            java.time.LocalTime rep = switch (bucket) {
-                case MORNING -> java.time.LocalTime.of(9, 0);
-                case EVENING -> java.time.LocalTime.of(18, 0);
-                default -> java.time.LocalTime.of(2, 0);
-            };
-            java.time.LocalDateTime now = java.time.LocalDateTime.now(zoneId).withHour(rep.getHour()).withMinute(0).withSecond(0).withNano(0);
+            java.time.LocalDateTime now = java.time.LocalDateTime.now(clock).withHour(representativeHour(bucket)).withMinute(0).withSecond(0).withNano(0);
             double ridesSignal = dataLoader.ridesSignalForCityAt(now, cityId);
             double eatsSignal = dataLoader.eatsSignalForCityAt(now, cityId);
-
-            String key = String.valueOf(cityId);
-            Map<String, Double> rides = new LinkedHashMap<>();
-            Map<String, Double> eats = new LinkedHashMap<>();
-            rides.put(key, ridesSignal);
-            eats.put(key, eatsSignal);
-
-        Map<String, DemandCalculator.ZoneDemand> calculations = DemandCalculator.calculateDemand(
-            rides,
-            eats,
-            null,
-            null,
-            null,
-            null,
-            null,
-            userType == UserType.RIDER ? DemandCalculator.UserType.RIDER : DemandCalculator.UserType.FOOD
-        );
-
-            Map<String, ZoneDemandDto> out = new LinkedHashMap<>();
-            DemandCalculator.ZoneDemand d = calculations.get(key);
-            if (d == null) {
-                out.put(key, new ZoneDemandDto(0.0, "low", 0.0, "low", "stay"));
-            } else {
-                out.put(key, new ZoneDemandDto(
-                        d.getRidesScore(),
-                        d.getRidesLevel(),
-                        d.getEatsScore(),
-                        d.getEatsLevel(),
-                        d.getRecommendation()
-                ));
-            }
-            return new DemandResponse(Instant.now(), label, out);
+            return buildCityResponse(label, cityId, ridesSignal, eatsSignal, userType, TripEventStore.toEpochMinute(now));
         }
 
         Map<String, Double> rides;
@@ -174,32 +213,83 @@ public class DemandService {
             eats = dataLoader.eatsFor(bucket);
         }
 
-    Map<String, DemandCalculator.ZoneDemand> calculations = DemandCalculator.calculateDemand(
-        rides,
-        eats,
-        null,
-        null,
-        null,
-        null,
-        null,
-        userType == UserType.RIDER ? DemandCalculator.UserType.RIDER : DemandCalculator.UserType.FOOD
-    );
-
-    Map<String, ZoneDemandDto> zones = new LinkedHashMap<>();
-        for (String zone : dataLoader.zones()) {
-            DemandCalculator.ZoneDemand demand = calculations.get(zone);
-            if (demand == null) {
-                demand = new DemandCalculator.ZoneDemand(0.0, "low", 0.0, "low", "stay");
-            }
-            zones.put(zone, new ZoneDemandDto(
-                    demand.getRidesScore(),
-                    demand.getRidesLevel(),
-                    demand.getEatsScore(),
-                    demand.getEatsLevel(),
-                    demand.getRecommendation()
-            ));
+        int epochMinute = TripEventStore.toEpochMinute(java.time.LocalDateTime.now(clock).withHour(representativeHour(bucket)).withMinute(0));
+        return buildZoneResponse(label, rides, eats, userType, cityId, epochMinute);
+    }
+
+    private static int representativeHour(DemandBucket bucket) {
+        return switch (bucket) {
+            case MORNING -> 9;
+            case EVENING -> 18;
+            default -> 2;
+        };
+    }
+
+    private DemandResponse buildCityResponse(String label, int cityId, double ridesSignal, double eatsSignal, UserType userType, int epochMinute) {
+        ScoringBuffers b = buffers.get();
+        DemandFeatureStore.Features f = b.features;
+        features.fillCity(cityId, epochMinute, f, 0);
+        b.rides[0] = ridesSignal;
+        b.eats[0] = eatsSignal;
+        DemandCalculator.Scores scores = b.scores;
+        DemandCalculator.calculateDemand(1, b.rides, b.eats,
+                f.surge, f.heat, f.incentives, f.weather, f.cancellation, calculatorType(userType), scores);
+
+        Map<String, ZoneDemandDto> out = new LinkedHashMap<>();
+        out.put(String.valueOf(cityId), toDto(scores, 0));
+        return new DemandResponse(Instant.now(), label, out);
+    }
+
+    private DemandResponse buildZoneResponse(String label, Map<String, Double> rides, Map<String, Double> eats,
+                                             UserType userType, int cityId, int epochMinute) {
+        java.util.List<String> zoneNames = dataLoader.zones();
+        int n = zoneNames.size();
+        ScoringBuffers b = buffers.get();
+        double[] r = b.rides;
+        double[] e = b.eats;
+        for (int z = 0; z < n; z++) {
+            r[z] = rides.getOrDefault(zoneNames.get(z), 0.0);
+            e[z] = eats.getOrDefault(zoneNames.get(z), 0.0);
         }
+        DemandFeatureStore.Features f = b.features;
+        features.fillZones(cityId, epochMinute, f);
+        DemandCalculator.Scores scores = b.scores;
+        DemandCalculator.calculateDemand(n, r, e, f.surge, f.heat, f.incentives, f.weather, f.cancellation,
+                calculatorType(userType), scores);
 
+        Map<String, ZoneDemandDto> zones = new LinkedHashMap<>();
+        for (int z = 0; z < n; z++) {
+            zones.put(zoneNames.get(z), toDto(scores, z));
+        }
         return new DemandResponse(Instant.now(), label, zones);
     }
+
+    private static DemandCalculator.UserType calculatorType(UserType userType) {
+        return userType == UserType.RIDER ? DemandCalculator.UserType.RIDER : DemandCalculator.UserType.FOOD;
+    }
+
+    private static ZoneDemandDto toDto(DemandCalculator.Scores scores, int z) {
+        return new ZoneDemandDto(
+                scores.ridesScore(z),
+                scores.ridesLevel(z).getLabel(),
+                scores.eatsScore(z),
+                scores.eatsLevel(z).getLabel(),
+                scores.recommendation(z)
+        );
+    }
+
+    // Per-thread inputs and outputs for DemandCalculator; the DTOs copy out of them before returning.
+    private static final class ScoringBuffers {
+        private final DemandFeatureStore.Features features;
+        private final double[] rides;
+        private final double[] eats;
+        private final DemandCalculator.Scores scores;
+
+        private ScoringBuffers(int zones) {
+            this.features = new DemandFeatureStore.Features(zones);
+            this.rides = new double[zones];
+            this.eats = new double[zones];
+            this.scores = new DemandCalculator.Scores(zones);
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package com.attentionseekers.service;
+
+public enum EventDataset {
+    RIDES("rides", "classpath:data/rides_trips.csv"),
+    EATS("eats", "classpath:data/eats_orders.csv");
+
+    private final String code;
+    private final String location;
+
+    EventDataset(String code, String location) {
+        this.code = code;
+        this.location = location;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public static EventDataset from(String value) {
+        String normalized = value == null ? "" : value.trim().toLowerCase();
+        for (EventDataset dataset : values()) {
+            if (dataset.code.equals(normalized)) {
+                return dataset;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported dataset: " + value);
+    }
+}
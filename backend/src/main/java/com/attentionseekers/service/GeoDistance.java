@@ -0,0 +1,124 @@
+package com.attentionseekers.service;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Great-circle distance kernel shared by every radius and nearest-point query. Radius tests
+ * first reject points outside the query's lat/lon bounding box, then compare the haversine
+ * term against a precomputed limit, which skips the atan2/sqrt of a full distance and, with
+ * per-point cosines computed at index time, half of the remaining trig.
+ */
+public final class GeoDistance {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+    static final double KM_PER_DEGREE = EARTH_RADIUS_KM * Math.PI / 180.0;
+
+    private GeoDistance() {
+    }
+
+    public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return EARTH_RADIUS_KM * c;
+    }
+
+    public static double cosLatitude(double lat) {
+        return Math.cos(Math.toRadians(lat));
+    }
+
+    public static double[] cosLatitudes(double[] lat) {
+        double[] out = new double[lat.length];
+        for (int i = 0; i < lat.length; i++) {
+            out[i] = cosLatitude(lat[i]);
+        }
+        return out;
+    }
+
+    public static Radius radius(double lat, double lon, double radiusKm) {
+        return new Radius(lat, lon, radiusKm);
+    }
+
+    /** A radius query with its bounding box and haversine limit worked out once. */
+    public static final class Radius {
+        private final double lat;
+        private final double lon;
+        private final double cosLat;
+        private final double maxHaversine;
+        private final double minLat;
+        private final double maxLat;
+        private final double minLon;
+        private final double maxLon;
+        // box crosses the antimeridian or reaches a pole, so longitude cannot be used to reject
+        private final boolean anyLongitude;
+
+        private Radius(double lat, double lon, double radiusKm) {
+            this.lat = lat;
+            this.lon = lon;
+            this.cosLat = cosLatitude(lat);
+            double half = Math.min(Math.PI / 2, radiusKm / EARTH_RADIUS_KM / 2);
+            this.maxHaversine = Math.sin(half) * Math.sin(half);
+
+            // a hair of slack so rounding in the box never rejects a point the exact test accepts
+            double dLat = radiusKm / KM_PER_DEGREE * (1 + 1e-9) + 1e-12;
+            this.minLat = lat - dLat;
+            this.maxLat = lat + dLat;
+            double maxAbsLat = Math.max(Math.abs(minLat), Math.abs(maxLat));
+            double cosEdge = Math.cos(Math.toRadians(Math.min(90.0, maxAbsLat)));
+            double dLon = cosEdge < 1e-6 ? 360.0 : radiusKm / (KM_PER_DEGREE * cosEdge) * (1 + 1e-9) + 1e-12;
+            this.anyLongitude = lon - dLon < -180.0 || lon + dLon > 180.0;
+            this.minLon = lon - dLon;
+            this.maxLon = lon + dLon;
+        }
+
+        public double minLat() {
+            return minLat;
+        }
+
+        public double maxLat() {
+            return maxLat;
+        }
+
+        public double minLon() {
+            return anyLongitude ? -180.0 : minLon;
+        }
+
+        public double maxLon() {
+            return anyLongitude ? 180.0 : maxLon;
+        }
+
+        // Whether the box spans every longitude, e.g. near a pole or across the antimeridian.
+        public boolean wrapsLongitude() {
+            return anyLongitude;
+        }
+
+        public boolean inBox(double pLat, double pLon) {
+            return pLat >= minLat && pLat <= maxLat && (anyLongitude || (pLon >= minLon && pLon <= maxLon));
+        }
+
+        // Exact test for a point whose cosLatitude() is already known.
+        public boolean contains(double pLat, double pLon, double pCosLat) {
+            if (!inBox(pLat, pLon)) return false;
+            double sinLat = Math.sin(Math.toRadians(pLat - lat) / 2);
+            double sinLon = Math.sin(Math.toRadians(pLon - lon) / 2);
+            return sinLat * sinLat + cosLat * pCosLat * sinLon * sinLon <= maxHaversine;
+        }
+
+        public boolean contains(double pLat, double pLon) {
+            return contains(pLat, pLon, cosLatitude(pLat));
+        }
+
+        // Calls action with every i in [from, to) whose point lies within the radius.
+        public void forEachWithin(double[] pLat, double[] pLon, double[] pCosLat, int from, int to, IntConsumer action) {
+            for (int i = from; i < to; i++) {
+                if (contains(pLat[i], pLon[i], pCosLat[i])) action.accept(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.attentionseekers.service;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Static KD-tree over points projected onto the unit sphere. Straight-line (chord) distance
+ * between unit vectors grows with great-circle distance, so a split plane bounds the haversine
+ * distance of everything behind it and k-nearest queries prune whole subtrees, with no special
+ * cases at the poles or the antimeridian. Candidates are still ranked by haversineKm so results
+ * match a full scan exactly, ties going to the lower index.
+ */
+final class GeoKdTree {
+
+    private static final int LEAF_SIZE = 8;
+
+    // points reordered into tree order; member[k] is the caller's index
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final double[] lat;
+    private final double[] lon;
+    private final double[] cosLat;
+    private final int[] member;
+    // split axis of the node whose pivot sits at position k
+    private final byte[] axis;
+
+    GeoKdTree(double[] lat, double[] lon) {
+        int n = lat.length;
+        double[][] xyz = new double[3][n];
+        for (int i = 0; i < n; i++) {
+            double[] v = unitVector(lat[i], lon[i]);
+            xyz[0][i] = v[0];
+            xyz[1][i] = v[1];
+            xyz[2][i] = v[2];
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        this.axis = new byte[n];
+        build(order, xyz, 0, n);
+
+        this.x = new double[n];
+        this.y = new double[n];
+        this.z = new double[n];
+        this.lat = new double[n];
+        this.lon = new double[n];
+        this.member = order;
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            x[k] = xyz[0][i];
+            y[k] = xyz[1][i];
+            z[k] = xyz[2][i];
+            this.lat[k] = lat[i];
+            this.lon[k] = lon[i];
+        }
+        this.cosLat = GeoDistance.cosLatitudes(this.lat);
+    }
+
+    int size() {
+        return member.length;
+    }
+
+    // Indices of the k points closest to (qLat, qLon), nearest first.
+    int[] nearest(double qLat, double qLon, int k) {
+        return nearest(qLat, qLon, k, i -> true);
+    }
+
+    // Same, considering only points whose index passes accept.
+    int[] nearest(double qLat, double qLon, int k, IntPredicate accept) {
+        if (k < 0) throw new IllegalArgumentException("k must not be negative: " + k);
+        k = Math.min(k, member.length);
+        if (k == 0) return new int[0];
+        Search search = new Search(qLat, qLon, k, accept);
+        search.visit(0, member.length);
+        return search.sorted();
+    }
+
+    // Calls action with the index of every point within radiusKm of (qLat, qLon), in no particular order.
+    void forEachWithin(double qLat, double qLon, double radiusKm, IntConsumer action) {
+        GeoDistance.Radius radius = GeoDistance.radius(qLat, qLon, radiusKm);
+        visitRange(unitVector(qLat, qLon), reach(radiusKm), 0, member.length,
+                k -> radius.contains(lat[k], lon[k], cosLat[k]), action);
+    }
+
+    // Calls action with the index of every point inside the box, in no particular order. A box
+    // with west > east crosses the antimeridian.
+    void forEachInBox(double south, double west, double north, double east, IntConsumer action) {
+        double width = west <= east ? east - west : east + 360.0 - west;
+        double centreLon = west + width / 2;
+        if (centreLon > 180.0) centreLon -= 360.0;
+        // meridian arc to the point's latitude, then along its parallel: an upper bound on the distance
+        double widestCos = south <= 0.0 && north >= 0.0
+                ? 1.0 : GeoDistance.cosLatitude(Math.min(Math.abs(south), Math.abs(north)));
+        double coverKm = GeoDistance.KM_PER_DEGREE * ((north - south) / 2 + width / 2 * widestCos);
+        boolean wraps = west > east;
+        visitRange(unitVector((south + north) / 2, centreLon), reach(coverKm), 0, member.length,
+                k -> lat[k] >= south && lat[k] <= north
+                        && (wraps ? lon[k] >= west || lon[k] <= east : lon[k] >= west && lon[k] <= east),
+                action);
+    }
+
+    // Visits every subtree a point within chord distance reach of q could be in.
+    private void visitRange(double[] q, double reach, int from, int to, IntPredicate test, IntConsumer action) {
+        if (to - from <= LEAF_SIZE) {
+            for (int k = from; k < to; k++) {
+                if (test.test(k)) action.accept(member[k]);
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        int a = axis[mid];
+        double diff = q[a] - coordinate(a, mid);
+        if (test.test(mid)) action.accept(member[mid]);
+        if (diff <= reach) visitRange(q, reach, from, mid, test, action);
+        if (-diff <= reach) visitRange(q, reach, mid + 1, to, test, action);
+    }
+
+    private void build(int[] order, double[][] xyz, int from, int to) {
+        if (to - from <= LEAF_SIZE) return;
+        int a = widestAxis(order, xyz, from, to);
+        int mid = (from + to) >>> 1;
+        select(order, xyz[a], from, to - 1, mid);
+        axis[mid] = (byte) a;
+        build(order, xyz, from, mid);
+        build(order, xyz, mid + 1, to);
+    }
+
+    private static int widestAxis(int[] order, double[][] xyz, int from, int to) {
+        int best = 0;
+        double bestSpread = -1.0;
+        for (int a = 0; a < 3; a++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int k = from; k < to; k++) {
+                double v = xyz[a][order[k]];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    // Quickselect: afterwards order[nth] holds the nth smallest value, smaller ones before it.
+    private static void select(int[] order, double[] values, int lo, int hi, int nth) {
+        while (lo < hi) {
+            double pivot = values[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[order[i]] < pivot) i++;
+                while (values[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double coordinate(int a, int k) {
+        return a == 0 ? x[k] : a == 1 ? y[k] : z[k];
+    }
+
+    private static double[] unitVector(double lat, double lon) {
+        double cosLat = GeoDistance.cosLatitude(lat);
+        double lonRad = Math.toRadians(lon);
+        return new double[]{cosLat * Math.cos(lonRad), cosLat * Math.sin(lonRad), Math.sin(Math.toRadians(lat))};
+    }
+
+    // Chord length between unit vectors whose great-circle distance is km, with a hair of slack
+    // so rounding never prunes a point exactly at that distance.
+    private static double reach(double km) {
+        double chord = 2 * Math.sin(Math.min(Math.PI, km / GeoDistance.EARTH_RADIUS_KM) / 2);
+        return chord * (1 + 1e-9) + 1e-12;
+    }
+
+    /** One k-nearest query: a max-heap of the best candidates so far, worst at the root. */
+    private final class Search {
+        private final double qLat;
+        private final double qLon;
+        private final double[] q;
+        private final IntPredicate accept;
+        private final int[] heap;
+        private final double[] heapKm;
+        private int size;
+        // chord bound for the current worst candidate, infinite until the heap is full
+        private double reach = Double.POSITIVE_INFINITY;
+
+        private Search(double qLat, double qLon, int k, IntPredicate accept) {
+            this.qLat = qLat;
+            this.qLon = qLon;
+            this.q = unitVector(qLat, qLon);
+            this.accept = accept;
+            this.heap = new int[k];
+            this.heapKm = new double[k];
+        }
+
+        private void visit(int from, int to) {
+            if (to - from <= LEAF_SIZE) {
+                for (int k = from; k < to; k++) {
+                    offer(k);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            int a = axis[mid];
+            double diff = q[a] - coordinate(a, mid);
+            offer(mid);
+            if (diff < 0) {
+                visit(from, mid);
+                if (-diff <= reach) visit(mid + 1, to);
+            } else {
+                visit(mid + 1, to);
+                if (diff <= reach) visit(from, mid);
+            }
+        }
+
+        private void offer(int k) {
+            int i = member[k];
+            if (!accept.test(i)) return;
+            double km = GeoDistance.haversineKm(qLat, qLon, lat[k], lon[k]);
+            if (size < heap.length) {
+                heap[size] = i;
+                heapKm[size] = km;
+                siftUp(size++);
+            } else if (worse(heap[0], heapKm[0], i, km)) {
+                heap[0] = i;
+                heapKm[0] = km;
+                siftDown(0);
+            } else {
+                return;
+            }
+            if (size == heap.length) {
+                reach = reach(heapKm[0]);
+            }
+        }
+
+        // Whether candidate (a, aKm) ranks after (b, bKm).
+        private boolean worse(int a, double aKm, int b, double bKm) {
+            return aKm > bKm || (aKm == bKm && a > b);
+        }
+
+        private void siftUp(int pos) {
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!worse(heap[pos], heapKm[pos], heap[parent], heapKm[parent])) return;
+                swap(pos, parent);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int pos) {
+            while (true) {
+                int left = pos * 2 + 1;
+                if (left >= size) return;
+                int child = left + 1 < size && worse(heap[left + 1], heapKm[left + 1], heap[left], heapKm[left])
+                        ? left + 1 : left;
+                if (!worse(heap[child], heapKm[child], heap[pos], heapKm[pos])) return;
+                swap(pos, child);
+                pos = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int i = heap[a];
+            heap[a] = heap[b];
+            heap[b] = i;
+            double km = heapKm[a];
+            heapKm[a] = heapKm[b];
+            heapKm[b] = km;
+        }
+
+        // Empties the heap worst-first into the back of the result.
+        private int[] sorted() {
+            int[] out = new int[size];
+            for (int pos = size - 1; pos >= 0; pos--) {
+                out[pos] = heap[0];
+                size--;
+                if (size > 0) {
+                    heap[0] = heap[size];
+                    heapKm[0] = heapKm[size];
+                    siftDown(0);
+                }
+            }
+            return out;
+        }
+    }
+}
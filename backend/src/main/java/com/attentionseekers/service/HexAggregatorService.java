@@ -1,34 +1,32 @@
 package com.attentionseekers.service;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 @Component
 public class HexAggregatorService {
 
-    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private final ResourceLoader resourceLoader;
+    private final DataSnapshots snapshots;
+    private final DataSnapshot.Part<EnumMap<EventDataset, HexCountIndex>> index;
+    private final ThreadLocal<ZoneTotals> zoneTotals = ThreadLocal.withInitial(ZoneTotals::new);
 
-    public HexAggregatorService(ResourceLoader resourceLoader) {
-        this.resourceLoader = resourceLoader;
+    public HexAggregatorService(TripEventStore eventStore) {
+        this.snapshots = eventStore.snapshots();
+        this.index = snapshots.register(buildIndex(eventStore));
     }
 
     public Map<String, Double> zoneRidesSignal(DemandBucket bucket, Integer cityId, DemandDataLoader loader) {
         try {
-            EnumMap<DemandBucket, Map<String, Integer>> counts = loadHexCounts("classpath:data/rides_trips.csv", bucket, cityId);
-            return aggregateHexCountsToZones(counts, loader);
+            return aggregateHexCountsToZones(snapshots.current().get(index).get(EventDataset.RIDES).counts(bucket, cityId), loader);
         } catch (Exception e) {
             return loader.ridesFor(bucket);
         }
@@ -36,96 +34,169 @@ public class HexAggregatorService {
 
     public Map<String, Double> zoneEatsSignal(DemandBucket bucket, Integer cityId, DemandDataLoader loader) {
         try {
-            EnumMap<DemandBucket, Map<String, Integer>> counts = loadHexCounts("classpath:data/eats_orders.csv", bucket, cityId);
-            return aggregateHexCountsToZones(counts, loader);
+            return aggregateHexCountsToZones(snapshots.current().get(index).get(EventDataset.EATS).counts(bucket, cityId), loader);
         } catch (Exception e) {
             return loader.eatsFor(bucket);
         }
     }
 
-    private EnumMap<DemandBucket, Map<String, Integer>> loadHexCounts(String resourcePath, DemandBucket wantedBucket, Integer cityFilter) {
-        Resource resource = resourceLoader.getResource(resourcePath);
-        EnumMap<DemandBucket, Map<String, Integer>> counts = new EnumMap<>(DemandBucket.class);
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-            String header = reader.readLine();
-            if (header == null) throw new IllegalStateException("Empty CSV: " + resourcePath);
-            int cityIdIdx = findHeaderIndex(header, "city_id", 3);
-            int startTimeIdx = findHeaderIndex(header, "start_time", 7);
-            int pickupHexIdx = findHeaderIndex(header, "pickup_hex_id9", -1);
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) continue;
-                String[] fields = line.split(",", -1);
-                try {
-                    String start = safeGet(fields, startTimeIdx);
-                    LocalDateTime dt = LocalDateTime.parse(start, DATE_TIME);
-                    DemandBucket bucket = DemandBucket.from(dt.toLocalTime());
-                    if (bucket != wantedBucket) continue;
-
-                    if (cityFilter != null && cityFilter > 0) {
-                        String cityRaw = safeGet(fields, cityIdIdx);
-                        int cityId = Integer.parseInt(cityRaw);
-                        if (cityId != cityFilter) continue;
-                    }
-
-                    String hex = pickupHexIdx >= 0 ? safeGet(fields, pickupHexIdx) : "";
-                    if (hex == null || hex.isBlank()) continue;
-                    Map<String, Integer> map = counts.computeIfAbsent(bucket, b -> new HashMap<>());
-                    map.merge(hex, 1, Integer::sum);
-                } catch (Exception ignored) {
-                }
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to load " + resourcePath, e);
-        }
-        return counts;
+    // Writes to the latest snapshot; DemandDataLoader keeps the event for replay after a reload.
+    public void record(EventDataset dataset, int cityId, DemandBucket bucket, long pickupHex) {
+        if (pickupHex == 0L) return;
+        snapshots.latest().get(index).get(dataset).record(cityId, bucket, pickupHex, 1);
     }
 
-    private Map<String, Double> aggregateHexCountsToZones(EnumMap<DemandBucket, Map<String, Integer>> hexCounts, DemandDataLoader loader) {
-        Map<String, Integer> counts = hexCounts.values().stream().findFirst().orElse(new HashMap<>());
-        int max = counts.values().stream().mapToInt(Integer::intValue).max().orElse(0);
-        Map<String, Double> hexNorm = new LinkedHashMap<>();
-        Map<String, Integer> hexActivity = new LinkedHashMap<>();
-        for (Map.Entry<String, Integer> e : counts.entrySet()) {
-            hexActivity.put(e.getKey(), e.getValue());
-            double norm = max == 0 ? 0.0 : ((double) e.getValue()) / max;
-            hexNorm.put(e.getKey(), Math.round(norm * 100.0) / 100.0);
+    void prepareReload(TripEventStore staged, DataSnapshot.Builder next) {
+        next.put(index, buildIndex(staged));
+    }
+
+    // Call while the live events are paused, right before the staged snapshot is published.
+    void replayLiveEvents(LiveEventDeltas liveEvents, DataSnapshot.Builder next) {
+        EnumMap<EventDataset, HexCountIndex> staged = next.get(index);
+        liveEvents.forEach((dataset, cityId, dayOfWeek, hour, pickupHex, events) -> {
+            if (pickupHex != 0L) staged.get(dataset).record(cityId, DemandBucket.fromHour(hour), pickupHex, events);
+        });
+    }
+
+    private static EnumMap<EventDataset, HexCountIndex> buildIndex(TripEventStore store) {
+        EnumMap<EventDataset, HexCountIndex> built = new EnumMap<>(EventDataset.class);
+        for (EventDataset dataset : EventDataset.values()) {
+            built.put(dataset, HexCountIndex.build(store.columns(dataset)));
         }
+        return built;
+    }
 
-        Map<String, Double> zoneSum = new LinkedHashMap<>();
-        Map<String, Integer> zoneWeight = new LinkedHashMap<>();
-        for (Map.Entry<String, Double> he : hexNorm.entrySet()) {
-            String hex = he.getKey();
-            double norm = he.getValue();
-            String zone = loader.zoneForHex(hex);
-            if (zone == null) continue;
-            int weight = hexActivity.getOrDefault(hex, 1);
-            zoneSum.put(zone, zoneSum.getOrDefault(zone, 0.0) + norm * weight);
-            zoneWeight.put(zone, zoneWeight.getOrDefault(zone, 0) + weight);
+    private Map<String, Double> aggregateHexCountsToZones(HexCounts counts, DemandDataLoader loader) {
+        int max = counts.max.get();
+        ZoneTotals totals = zoneTotals.get();
+        totals.reset(loader.zones().size());
+        for (int i = 0; i < counts.hexes.length; i++) {
+            totals.add(counts.hexes[i], counts.counts.get(i), max);
         }
+        counts.added.forEach((hex, count) -> totals.add(hex, count.get(), max));
 
         Map<String, Double> zoneSignal = new LinkedHashMap<>();
-        for (String zone : loader.zones()) {
-            double sum = zoneSum.getOrDefault(zone, 0.0);
-            int w = zoneWeight.getOrDefault(zone, 0);
-            double v = w == 0 ? 0.0 : Math.round((sum / w) * 100.0) / 100.0;
-            zoneSignal.put(zone, v);
+        for (int z = 0; z < loader.zones().size(); z++) {
+            int w = totals.weight[z];
+            double v = w == 0 ? 0.0 : Math.round((totals.sum[z] / w) * 100.0) / 100.0;
+            zoneSignal.put(loader.zones().get(z), v);
         }
         return zoneSignal;
     }
 
-    private String safeGet(String[] fields, int idx) {
-        if (idx < 0 || idx >= fields.length) return "";
-        return fields[idx];
+    // Weighted per-zone sums, reused by each thread across calls.
+    private static final class ZoneTotals {
+        private double[] sum = new double[0];
+        private int[] weight = new int[0];
+
+        void reset(int zones) {
+            if (sum.length != zones) {
+                sum = new double[zones];
+                weight = new int[zones];
+            } else {
+                Arrays.fill(sum, 0.0);
+                Arrays.fill(weight, 0);
+            }
+        }
+
+        void add(long hex, int count, int max) {
+            if (count == 0) return;
+            // a concurrent increment can briefly push a count past the max read above
+            double norm = max == 0 ? 0.0 : Math.min(1.0, Math.round(((double) count) / max * 100.0) / 100.0);
+            int zone = DemandDataLoader.zoneIndex(0, hex);
+            sum[zone] += norm * count;
+            weight[zone] += count;
+        }
     }
 
-    private int findHeaderIndex(String headerLine, String name, int fallback) {
-        if (headerLine == null) return fallback;
-        String[] cols = headerLine.split(",", -1);
-        for (int i = 0; i < cols.length; i++) {
-            if (cols[i].trim().equalsIgnoreCase(name)) return i;
+    private static final class HexCountIndex {
+        private final EnumMap<DemandBucket, HexCounts> all;
+        private final ConcurrentHashMap<Integer, EnumMap<DemandBucket, HexCounts>> byCity;
+
+        private HexCountIndex(EnumMap<DemandBucket, HexCounts> all, ConcurrentHashMap<Integer, EnumMap<DemandBucket, HexCounts>> byCity) {
+            this.all = all;
+            this.byCity = byCity;
+        }
+
+        HexCounts counts(DemandBucket bucket, Integer cityId) {
+            EnumMap<DemandBucket, HexCounts> buckets = cityId != null && cityId > 0 ? byCity.get(cityId) : all;
+            if (buckets == null) return HexCounts.EMPTY;
+            return buckets.get(bucket);
+        }
+
+        void record(int cityId, DemandBucket bucket, long hex, int events) {
+            all.get(bucket).increment(hex, events);
+            byCity.computeIfAbsent(cityId, c -> freeze(new EnumMap<>(DemandBucket.class))).get(bucket).increment(hex, events);
+        }
+
+        static HexCountIndex build(TripEventStore.Columns columns) {
+            EnumMap<DemandBucket, Map<Long, Integer>> all = new EnumMap<>(DemandBucket.class);
+            Map<Integer, EnumMap<DemandBucket, Map<Long, Integer>>> byCity = new HashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                long hex = columns.pickupHex[i];
+                if (hex == 0L) continue;
+                DemandBucket bucket = columns.bucket(i);
+                all.computeIfAbsent(bucket, b -> new HashMap<>()).merge(hex, 1, Integer::sum);
+                byCity.computeIfAbsent(columns.cityId[i], c -> new EnumMap<>(DemandBucket.class))
+                        .computeIfAbsent(bucket, b -> new HashMap<>())
+                        .merge(hex, 1, Integer::sum);
+            }
+
+            ConcurrentHashMap<Integer, EnumMap<DemandBucket, HexCounts>> frozenByCity = new ConcurrentHashMap<>();
+            byCity.forEach((city, buckets) -> frozenByCity.put(city, freeze(buckets)));
+            return new HexCountIndex(freeze(all), frozenByCity);
+        }
+
+        // Every bucket gets its own HexCounts so the EnumMap itself is never written after publication.
+        private static EnumMap<DemandBucket, HexCounts> freeze(EnumMap<DemandBucket, Map<Long, Integer>> counts) {
+            EnumMap<DemandBucket, HexCounts> out = new EnumMap<>(DemandBucket.class);
+            for (DemandBucket bucket : DemandBucket.values()) {
+                out.put(bucket, HexCounts.of(counts.getOrDefault(bucket, Collections.emptyMap())));
+            }
+            return out;
+        }
+    }
+
+    // Hex ids known at build time sorted ascending with atomic counts in a parallel array;
+    // hexes first seen through live events go to the side map.
+    private static final class HexCounts {
+        static final HexCounts EMPTY = of(Collections.emptyMap());
+
+        final long[] hexes;
+        final AtomicIntegerArray counts;
+        final ConcurrentHashMap<Long, AtomicInteger> added = new ConcurrentHashMap<>();
+        final AtomicInteger max = new AtomicInteger();
+
+        private HexCounts(long[] hexes, int[] counts) {
+            this.hexes = hexes;
+            this.counts = new AtomicIntegerArray(counts);
+            int m = 0;
+            for (int c : counts) {
+                if (c > m) m = c;
+            }
+            this.max.set(m);
+        }
+
+        void increment(long hex, int events) {
+            int i = Arrays.binarySearch(hexes, hex);
+            int count = i >= 0
+                    ? counts.addAndGet(i, events)
+                    : added.computeIfAbsent(hex, h -> new AtomicInteger()).addAndGet(events);
+            max.accumulateAndGet(count, Math::max);
+        }
+
+        static HexCounts of(Map<Long, Integer> map) {
+            long[] hexes = new long[map.size()];
+            int n = 0;
+            for (long hex : map.keySet()) {
+                hexes[n++] = hex;
+            }
+            Arrays.sort(hexes);
+            int[] counts = new int[hexes.length];
+            for (int i = 0; i < hexes.length; i++) {
+                counts[i] = map.get(hexes[i]);
+            }
+            return new HexCounts(hexes, counts);
         }
-        return fallback;
     }
 }
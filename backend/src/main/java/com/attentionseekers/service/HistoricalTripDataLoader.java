@@ -1,187 +1,219 @@
 package com.attentionseekers.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 @Component
 public class HistoricalTripDataLoader {
 
-    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final DataSnapshots snapshots;
+    private final DataSnapshot.Part<TripData> data;
 
-    private final List<TripRecord> allTrips;
-    private final Map<CityHourKey, Double> surgeByHour;
-    private final Map<CityHourKey, List<TripRecord>> tripsByZoneTime;
+    public HistoricalTripDataLoader(ResourceLoader resourceLoader) {
+        this(new TripEventStore(resourceLoader));
+    }
 
     @Autowired
-    public HistoricalTripDataLoader(ResourceLoader resourceLoader) {
-        this.allTrips = loadTrips(resourceLoader, "classpath:data/rides_trips.csv");
-        this.surgeByHour = loadSurgeData(resourceLoader, "classpath:data/surge_by_hour.csv");
-        this.tripsByZoneTime = indexTripsByZoneTime();
+    public HistoricalTripDataLoader(TripEventStore eventStore) {
+        this.snapshots = eventStore.snapshots();
+        this.data = snapshots.register(load(eventStore, eventStore.getResourceLoader()));
+    }
+
+    void prepareReload(TripEventStore staged, ResourceLoader resourceLoader, DataSnapshot.Builder next) {
+        next.put(data, load(staged, resourceLoader));
+    }
+
+    DataSnapshots snapshots() {
+        return snapshots;
+    }
+
+    private TripData data() {
+        return snapshots.current().get(data);
     }
 
     public List<TripRecord> getTripsForCityAndHour(int cityId, int hour) {
-        return tripsByZoneTime.getOrDefault(new CityHourKey(cityId, hour), Collections.emptyList());
+        TripData d = data();
+        HourIndex index = d.byCityHour.get(new CityHourKey(cityId, hour));
+        return index == null ? Collections.emptyList() : new TripList(d.rides, index.rows);
     }
 
     public double getSurgeForCityAndHour(int cityId, int hour) {
-        return surgeByHour.getOrDefault(new CityHourKey(cityId, hour), 1.0);
+        return data().surge.surge(cityId, hour);
     }
 
     public List<TripRecord> getAllTrips() {
-        return allTrips;
+        TripData d = data();
+        return new TripList(d.rides, null);
     }
 
     public List<TripRecord> getTripsForHour(int hour) {
-        return allTrips.stream()
-                .filter(trip -> trip.startTime.getHour() == hour)
-                .toList();
+        TripData d = data();
+        HourIndex index = d.hourIndex(hour);
+        return index == null ? Collections.emptyList() : new TripList(d.rides, index.rows);
     }
 
-    public double getAverageSurgeForHour(int hour) {
-        return surgeByHour.entrySet().stream()
-                .filter(entry -> entry.getKey().hour == hour)
-                .mapToDouble(Map.Entry::getValue)
-                .average()
-                .orElse(1.0);
+    public OriginDestinationMatrix getOriginDestinationMatrix() {
+        return data().originDestination;
     }
 
-    private List<TripRecord> loadTrips(ResourceLoader loader, String location) {
-        List<TripRecord> trips = new ArrayList<>();
-        Resource resource = loader.getResource(location);
-
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-
-            String header = reader.readLine();
-            if (header == null) {
-                throw new IllegalStateException("CSV " + location + " is empty");
-            }
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) continue;
+    // City of the closest trip pickup or drop point within maxKm, or 0 when there is none.
+    public int cityNear(double lat, double lon, double maxKm) {
+        TripData d = data();
+        int i = d.hexPoints.nearest(lat, lon, maxKm);
+        return i < 0 ? 0 : d.cityOfPoint[i];
+    }
 
-                try {
-                    TripRecord trip = parseTripRecord(line);
-                    if (trip != null) {
-                        trips.add(trip);
-                    }
-                } catch (Exception e) {
-                }
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to load " + location, e);
-        }
+    // Hour-wide aggregates over every city, computed once per snapshot.
+    public BaselineStats getBaselineForHour(int hour) {
+        HourIndex index = data().hourIndex(hour);
+        return index == null ? BaselineStats.EMPTY : index.baseline;
+    }
 
-        return trips;
+    public BaselineStats getBaselineForCityAndHour(int cityId, int hour) {
+        HourIndex index = data().byCityHour.get(new CityHourKey(cityId, hour));
+        return index == null ? BaselineStats.EMPTY : index.baseline;
     }
 
-    private TripRecord parseTripRecord(String line) {
-        String[] fields = line.split(",", -1);
-        if (fields.length < 24) return null;
+    // Trips starting in the given hour whose pickup lies within radiusKm of (lat, lon), in load order.
+    public List<TripRecord> getTripsWithPickupNear(int hour, double lat, double lon, double radiusKm) {
+        TripData d = data();
+        HourIndex index = d.hourIndex(hour);
+        return index == null ? Collections.emptyList() : new TripList(d.rides, index.rows(index.pickups.within(lat, lon, radiusKm)));
+    }
 
-        try {
-            TripRecord trip = new TripRecord();
-            trip.rideId = fields[0];
-            trip.driverId = fields[1];
-            trip.riderId = fields[2];
-            trip.cityId = Integer.parseInt(fields[3]);
-            trip.product = fields[4];
-            trip.vehicleType = fields[5];
-            trip.isEv = Boolean.parseBoolean(fields[6]);
-
-            trip.startTime = LocalDateTime.parse(fields[7], DATE_TIME);
-            trip.endTime = LocalDateTime.parse(fields[8], DATE_TIME);
-
-            trip.pickupLat = parseDouble(fields[9]);
-            trip.pickupLon = parseDouble(fields[10]);
-            trip.pickupHexId = fields[11];
-            trip.dropLat = parseDouble(fields[12]);
-            trip.dropLon = parseDouble(fields[13]);
-            trip.dropHexId = fields[14];
-
-            trip.distanceKm = parseDouble(fields[15]);
-            trip.durationMins = Integer.parseInt(fields[16]);
-            trip.surgeMultiplier = parseDouble(fields[17]);
-            trip.fareAmount = parseDouble(fields[18]);
-            trip.uberFee = parseDouble(fields[19]);
-            trip.netEarnings = parseDouble(fields[20]);
-            trip.tips = parseDouble(fields[21]);
-            trip.paymentType = fields[22];
+    public List<TripRecord> getTripsWithDropNear(int hour, double lat, double lon, double radiusKm) {
+        TripData d = data();
+        HourIndex index = d.hourIndex(hour);
+        return index == null ? Collections.emptyList() : new TripList(d.rides, index.rows(index.drops.within(lat, lon, radiusKm)));
+    }
 
-            return trip;
-        } catch (Exception e) {
-            return null;
-        }
+    // Feeds the trips of getTripsWithPickupNear that have a duration into an aggregate without building a list.
+    public TripAggregate aggregatePickupsNear(int hour, double lat, double lon, double radiusKm, TripAggregate into) {
+        HourIndex index = data().hourIndex(hour);
+        if (index != null) index.pickups.forEachWithin(lat, lon, radiusKm, index.feeder(into));
+        return into;
     }
 
-    private Map<CityHourKey, Double> loadSurgeData(ResourceLoader loader, String location) {
-        Map<CityHourKey, Double> surgeMap = new HashMap<>();
-        Resource resource = loader.getResource(location);
+    public TripAggregate aggregateDropsNear(int hour, double lat, double lon, double radiusKm, TripAggregate into) {
+        HourIndex index = data().hourIndex(hour);
+        if (index != null) index.drops.forEachWithin(lat, lon, radiusKm, index.feeder(into));
+        return into;
+    }
 
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+    // Same as the hour-wide aggregates, restricted to trips of one city.
+    public TripAggregate aggregatePickupsNear(int cityId, int hour, double lat, double lon, double radiusKm,
+                                              TripAggregate into) {
+        HourIndex index = data().byCityHour.get(new CityHourKey(cityId, hour));
+        if (index != null) index.pickups.forEachWithin(lat, lon, radiusKm, index.feeder(into));
+        return into;
+    }
 
-            String header = reader.readLine();
-            if (header == null) {
-                throw new IllegalStateException("CSV " + location + " is empty");
-            }
+    public TripAggregate aggregateDropsNear(int cityId, int hour, double lat, double lon, double radiusKm,
+                                            TripAggregate into) {
+        HourIndex index = data().byCityHour.get(new CityHourKey(cityId, hour));
+        if (index != null) index.drops.forEachWithin(lat, lon, radiusKm, index.feeder(into));
+        return into;
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) continue;
+    // Distinct pickup hexes, sorted, of the hour's trips starting within radiusKm of (lat, lon).
+    public long[] pickupHexesNear(int hour, double lat, double lon, double radiusKm) {
+        TripData d = data();
+        return pickupHexesNear(d.rides, d.hourIndex(hour), lat, lon, radiusKm);
+    }
 
-                try {
-                    String[] fields = line.split(",", -1);
-                    if (fields.length >= 3) {
-                        int cityId = Integer.parseInt(fields[0].trim());
-                        int hour = Integer.parseInt(fields[1].trim());
-                        double surge = parseDouble(fields[2].trim());
+    public long[] pickupHexesNear(int cityId, int hour, double lat, double lon, double radiusKm) {
+        TripData d = data();
+        return pickupHexesNear(d.rides, d.byCityHour.get(new CityHourKey(cityId, hour)), lat, lon, radiusKm);
+    }
 
-                        surgeMap.put(new CityHourKey(cityId, hour), surge);
-                    }
-                } catch (Exception e) {
-                }
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to load " + location, e);
+    private static long[] pickupHexesNear(TripEventStore.Columns c, HourIndex index, double lat, double lon,
+                                          double radiusKm) {
+        if (index == null) return new long[0];
+        int[] positions = index.pickups.within(lat, lon, radiusKm);
+        long[] hexes = new long[positions.length];
+        int n = 0;
+        for (int k : positions) {
+            long hex = c.pickupHex[index.rows[k]];
+            if (hex != 0L) hexes[n++] = hex;
+        }
+        Arrays.sort(hexes, 0, n);
+        int distinct = 0;
+        for (int k = 0; k < n; k++) {
+            if (k == 0 || hexes[k] != hexes[k - 1]) hexes[distinct++] = hexes[k];
         }
+        return Arrays.copyOf(hexes, distinct);
+    }
 
-        return surgeMap;
+    public double getAverageSurgeForHour(int hour) {
+        return data().surge.averageSurge(hour);
     }
 
-    private Map<CityHourKey, List<TripRecord>> indexTripsByZoneTime() {
-        Map<CityHourKey, List<TripRecord>> index = new HashMap<>();
+    public SurgeTable.Lookahead getSurgeLookahead(int cityId, int hour, int hours) {
+        return data().surge.lookahead(cityId, hour, hours);
+    }
 
-        for (TripRecord trip : allTrips) {
-            int hour = trip.startTime.getHour();
-            CityHourKey key = new CityHourKey(trip.cityId, hour);
+    // Lookahead over the hourly averages of every city.
+    public SurgeTable.Lookahead getSurgeLookahead(int hour, int hours) {
+        return data().surge.averageLookahead(hour, hours);
+    }
 
-            index.computeIfAbsent(key, k -> new ArrayList<>()).add(trip);
-        }
+    private TripData load(TripEventStore eventStore, ResourceLoader resourceLoader) {
+        TripEventStore.Columns rides = eventStore.columns(EventDataset.RIDES);
+        SurgeTable surge = SurgeTable.fromRows(TripEventStore.readRows(resourceLoader, "classpath:data/surge_by_hour.csv"));
+        Map<CityHourKey, HourIndex> byCityHour = new HashMap<>();
+        indexRowsByCityHour(rides).forEach((key, rows) -> byCityHour.put(key, new HourIndex(rides, rows)));
+        return new TripData(rides, surge, byCityHour, indexRowsByHour(rides), new OriginDestinationMatrix(rides));
+    }
 
+    private Map<CityHourKey, int[]> indexRowsByCityHour(TripEventStore.Columns rides) {
+        Map<CityHourKey, Integer> counts = new HashMap<>();
+        for (int i = 0; i < rides.size(); i++) {
+            counts.merge(new CityHourKey(rides.cityId[i], rides.hour(i)), 1, Integer::sum);
+        }
+        Map<CityHourKey, int[]> index = new HashMap<>();
+        counts.forEach((key, count) -> index.put(key, new int[count]));
+        Map<CityHourKey, Integer> filled = new HashMap<>();
+        for (int i = 0; i < rides.size(); i++) {
+            CityHourKey key = new CityHourKey(rides.cityId[i], rides.hour(i));
+            index.get(key)[filled.merge(key, 1, Integer::sum) - 1] = i;
+        }
         return index;
     }
 
-    private double parseDouble(String value) {
-        if (value == null || value.isBlank()) return 0.0;
-        try {
-            return Double.parseDouble(value.trim());
-        } catch (NumberFormatException e) {
-            return 0.0;
+    private HourIndex[] indexRowsByHour(TripEventStore.Columns rides) {
+        int[] counts = new int[24];
+        for (int i = 0; i < rides.size(); i++) {
+            counts[rides.hour(i)]++;
+        }
+        int[][] rows = new int[24][];
+        for (int h = 0; h < 24; h++) {
+            rows[h] = new int[counts[h]];
+        }
+        int[] fill = new int[24];
+        for (int i = 0; i < rides.size(); i++) {
+            int h = rides.hour(i);
+            rows[h][fill[h]++] = i;
+        }
+        HourIndex[] index = new HourIndex[24];
+        for (int h = 0; h < 24; h++) {
+            index[h] = new HourIndex(rides, rows[h]);
         }
+        return index;
+    }
+
+    // Baselines and radius aggregates divide earnings by duration, so trips without a positive
+    // duration stay out of them; the trip lists still return every trip.
+    private static boolean scorable(TripEventStore.Columns rides, int i) {
+        return rides.durationMins[i] > 0;
     }
-    
+
+    // Copy of one ride row, kept for callers of the List<TripRecord> API. Loaded data stays in the
+    // shared columns; each get() on the lists this loader hands out builds a fresh, detached record,
+    // so writes to it never reach the columns. Scoring reads the columns directly and never builds one.
     public static class TripRecord {
         public String rideId;
         public String driverId;
@@ -206,6 +238,209 @@ public class HistoricalTripDataLoader {
         public double netEarnings;
         public double tips;
         public String paymentType;
+
+        static TripRecord of(TripEventStore.Columns c, int i) {
+            TripRecord trip = new TripRecord();
+            trip.rideId = c.eventId[i];
+            trip.driverId = c.earnerId[i];
+            trip.riderId = c.customerId[i];
+            trip.cityId = c.cityId[i];
+            trip.product = c.product[i];
+            trip.vehicleType = c.vehicleType[i];
+            trip.isEv = c.isEv[i];
+
+            trip.startTime = TripEventStore.toDateTime(c.startMinute[i]);
+            trip.endTime = TripEventStore.toDateTime(c.endMinute[i]);
+
+            trip.pickupLat = c.pickupLat[i];
+            trip.pickupLon = c.pickupLon[i];
+            trip.pickupHexId = TripEventStore.hexToString(c.pickupHex[i]);
+            trip.dropLat = c.dropLat[i];
+            trip.dropLon = c.dropLon[i];
+            trip.dropHexId = TripEventStore.hexToString(c.dropHex[i]);
+
+            trip.distanceKm = c.distanceKm[i];
+            trip.durationMins = c.durationMins[i];
+            trip.surgeMultiplier = c.surge[i];
+            trip.fareAmount = c.fareAmount[i];
+            trip.uberFee = c.uberFee[i];
+            trip.netEarnings = c.netEarnings[i];
+            trip.tips = c.tips[i];
+            trip.paymentType = c.paymentType[i];
+
+            return trip;
+        }
+    }
+
+    // Read-only view of selected rows (every row when rows is null); get() copies the row out, so
+    // iterate it only where a per-row allocation is fine (tests, diagnostics).
+    private static final class TripList extends AbstractList<TripRecord> implements RandomAccess {
+        private final TripEventStore.Columns columns;
+        private final int[] rows;
+
+        private TripList(TripEventStore.Columns columns, int[] rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        public TripRecord get(int index) {
+            if (rows == null) {
+                Objects.checkIndex(index, columns.size());
+                return TripRecord.of(columns, index);
+            }
+            return TripRecord.of(columns, rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? columns.size() : rows.length;
+        }
+    }
+
+    public static final class BaselineStats {
+        static final BaselineStats EMPTY = new BaselineStats(0, 0.0, 1.0, 0.0, 0.0, new double[0]);
+
+        public final int tripCount;
+        public final double avgEarningsPerMinute;
+        public final double avgSurge;
+        public final double avgDistanceKm;
+        public final double avgDurationMins;
+        public final double p25EarningsPerMinute;
+        public final double p50EarningsPerMinute;
+        public final double p75EarningsPerMinute;
+        public final double p90EarningsPerMinute;
+
+        private BaselineStats(int tripCount, double avgEarningsPerMinute, double avgSurge,
+                              double avgDistanceKm, double avgDurationMins, double[] sortedEarningsPerMinute) {
+            this.tripCount = tripCount;
+            this.avgEarningsPerMinute = avgEarningsPerMinute;
+            this.avgSurge = avgSurge;
+            this.avgDistanceKm = avgDistanceKm;
+            this.avgDurationMins = avgDurationMins;
+            this.p25EarningsPerMinute = percentile(sortedEarningsPerMinute, 0.25);
+            this.p50EarningsPerMinute = percentile(sortedEarningsPerMinute, 0.50);
+            this.p75EarningsPerMinute = percentile(sortedEarningsPerMinute, 0.75);
+            this.p90EarningsPerMinute = percentile(sortedEarningsPerMinute, 0.90);
+        }
+
+        static BaselineStats of(TripEventStore.Columns c, int[] partition) {
+            int[] rows = Arrays.stream(partition).filter(i -> scorable(c, i)).toArray();
+            if (rows.length == 0) return EMPTY;
+            double[] earningsPerMinute = Arrays.stream(rows).mapToDouble(i -> c.netEarnings[i] / c.durationMins[i]).toArray();
+            double avgEarnings = Arrays.stream(earningsPerMinute).average().orElse(0.0);
+            Arrays.sort(earningsPerMinute);
+            return new BaselineStats(
+                    rows.length,
+                    avgEarnings,
+                    Arrays.stream(rows).mapToDouble(i -> c.surge[i]).average().orElse(1.0),
+                    Arrays.stream(rows).mapToDouble(i -> c.distanceKm[i]).average().orElse(0.0),
+                    Arrays.stream(rows).mapToDouble(i -> c.durationMins[i]).average().orElse(0.0),
+                    earningsPerMinute);
+        }
+
+        // Nearest-rank on the sorted values, the same index the trip scorer has always used for p75.
+        private static double percentile(double[] sorted, double p) {
+            if (sorted.length == 0) return 0.0;
+            return sorted[Math.min((int) (sorted.length * p), sorted.length - 1)];
+        }
+    }
+
+    private static final class TripData {
+        private final TripEventStore.Columns rides;
+        private final SurgeTable surge;
+        private final Map<CityHourKey, HourIndex> byCityHour;
+        private final HourIndex[] byHour;
+        private final OriginDestinationMatrix originDestination;
+        // pickup points of every trip with a known hex, followed by the drop points
+        private final TripGridIndex hexPoints;
+        private final int[] cityOfPoint;
+
+        private TripData(TripEventStore.Columns rides, SurgeTable surge,
+                         Map<CityHourKey, HourIndex> byCityHour, HourIndex[] byHour,
+                         OriginDestinationMatrix originDestination) {
+            this.rides = rides;
+            this.surge = surge;
+            this.byCityHour = byCityHour;
+            this.byHour = byHour;
+            this.originDestination = originDestination;
+
+            int n = rides.size();
+            double[] lat = new double[n * 2];
+            double[] lon = new double[n * 2];
+            int[] city = new int[n * 2];
+            int points = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < n; i++) {
+                    long h = pass == 0 ? rides.pickupHex[i] : rides.dropHex[i];
+                    if (h == 0L) continue;
+                    lat[points] = pass == 0 ? rides.pickupLat[i] : rides.dropLat[i];
+                    lon[points] = pass == 0 ? rides.pickupLon[i] : rides.dropLon[i];
+                    city[points++] = rides.cityId[i];
+                }
+            }
+            this.hexPoints = new TripGridIndex(Arrays.copyOf(lat, points), Arrays.copyOf(lon, points));
+            this.cityOfPoint = Arrays.copyOf(city, points);
+        }
+
+        private HourIndex hourIndex(int hour) {
+            return hour >= 0 && hour < byHour.length ? byHour[hour] : null;
+        }
+    }
+
+    // Rows of one start hour, for one city or for all of them, with separate grids over their
+    // pickup and drop points. Grid and aggregate inputs are copied per partition so radius
+    // queries stay within contiguous arrays.
+    private static final class HourIndex {
+        private final int[] rows;
+        private final TripGridIndex pickups;
+        private final TripGridIndex drops;
+        private final BaselineStats baseline;
+        private final double[] earningsPerMinute;
+        private final double[] surge;
+        private final double[] distanceKm;
+        private final boolean[] scorable;
+
+        private HourIndex(TripEventStore.Columns c, int[] rows) {
+            int n = rows.length;
+            this.rows = rows;
+            this.earningsPerMinute = new double[n];
+            this.surge = new double[n];
+            this.distanceKm = new double[n];
+            this.scorable = new boolean[n];
+            double[] pickupLat = new double[n];
+            double[] pickupLon = new double[n];
+            double[] dropLat = new double[n];
+            double[] dropLon = new double[n];
+            for (int k = 0; k < n; k++) {
+                int i = rows[k];
+                pickupLat[k] = c.pickupLat[i];
+                pickupLon[k] = c.pickupLon[i];
+                dropLat[k] = c.dropLat[i];
+                dropLon[k] = c.dropLon[i];
+                scorable[k] = scorable(c, i);
+                earningsPerMinute[k] = scorable[k] ? c.netEarnings[i] / c.durationMins[i] : 0.0;
+                surge[k] = c.surge[i];
+                distanceKm[k] = c.distanceKm[i];
+            }
+            this.pickups = new TripGridIndex(pickupLat, pickupLon);
+            this.drops = new TripGridIndex(dropLat, dropLon);
+            this.baseline = BaselineStats.of(c, rows);
+        }
+
+        private java.util.function.IntConsumer feeder(TripAggregate into) {
+            return k -> {
+                if (scorable[k]) into.add(earningsPerMinute[k], surge[k], distanceKm[k]);
+            };
+        }
+
+        private int[] rows(int[] positions) {
+            int[] out = new int[positions.length];
+            for (int k = 0; k < positions.length; k++) {
+                out[k] = rows[positions[k]];
+            }
+            return out;
+        }
     }
 
     private static class CityHourKey {
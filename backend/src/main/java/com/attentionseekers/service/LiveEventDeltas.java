@@ -0,0 +1,82 @@
+package com.attentionseekers.service;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Every live event applied since startup, folded into counts per (dataset, city, weekday, hour,
+ * pickup hex), which is all the demand counters key on. A reload rebuilds the counters from the
+ * CSVs and replays these counts into the staged snapshot, so ingested events survive it. Memory
+ * is bounded by the distinct keys, not by the number of events.
+ *
+ * Recording holds the read lock across the delta and the snapshot update; the replay and the
+ * publish hold the write lock, so no event lands in a snapshot that is being replaced.
+ */
+final class LiveEventDeltas {
+
+    private final ConcurrentHashMap<Key, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void recording(Runnable apply) {
+        lock.readLock().lock();
+        try {
+            apply.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void paused(Runnable replayAndPublish) {
+        lock.writeLock().lock();
+        try {
+            replayAndPublish.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void add(EventDataset dataset, int cityId, int epochMinute, long pickupHex) {
+        Key key = new Key(dataset, cityId, TripEventStore.dayOfWeekOf(epochMinute), TripEventStore.hourOf(epochMinute), pickupHex);
+        counts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    void forEach(Consumer consumer) {
+        counts.forEach((k, n) -> consumer.accept(k.dataset, k.cityId, k.dayOfWeek, k.hour, k.pickupHex, n.get()));
+    }
+
+    interface Consumer {
+        void accept(EventDataset dataset, int cityId, int dayOfWeek, int hour, long pickupHex, int count);
+    }
+
+    private static final class Key {
+        private final EventDataset dataset;
+        private final int cityId;
+        private final int dayOfWeek;
+        private final int hour;
+        private final long pickupHex;
+
+        private Key(EventDataset dataset, int cityId, int dayOfWeek, int hour, long pickupHex) {
+            this.dataset = dataset;
+            this.cityId = cityId;
+            this.dayOfWeek = dayOfWeek;
+            this.hour = hour;
+            this.pickupHex = pickupHex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return cityId == that.cityId && dayOfWeek == that.dayOfWeek && hour == that.hour
+                    && pickupHex == that.pickupHex && dataset == that.dataset;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dataset, cityId, dayOfWeek, hour, pickupHex);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.attentionseekers.service;
+
+import java.util.Arrays;
+
+/**
+ * Per-hour pickup hex x drop hex trip statistics in CSR form. Hexes are interned into dense
+ * ids; row (hour, origin) lists its destinations in id order, so a cell lookup is two binary
+ * searches and a whole origin's outbound summary is a single array read.
+ */
+public final class OriginDestinationMatrix {
+
+    private static final int HOURS = 24;
+
+    // sorted distinct hex ids; a hex's position is its dense id
+    private final long[] hexes;
+    // entries rowStart[hour * hexes.length + origin] .. rowStart[... + 1]
+    private final int[] rowStart;
+    private final int[] destination;
+    private final int[] tripCount;
+    private final double[] meanEarningsPerMinute;
+    private final double[] meanDurationMins;
+    // outbound summary per (hour, origin), same row numbering
+    private final int[] outboundCount;
+    private final double[] outboundEarningsPerMinute;
+    private final double[] hourEarningsPerMinute;
+
+    OriginDestinationMatrix(TripEventStore.Columns c) {
+        int n = c.size();
+        long[] all = new long[n * 2];
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (!usable(c, i)) continue;
+            all[distinct++] = c.pickupHex[i];
+            all[distinct++] = c.dropHex[i];
+        }
+        all = Arrays.copyOf(all, distinct);
+        Arrays.sort(all);
+        distinct = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[i - 1]) all[distinct++] = all[i];
+        }
+        this.hexes = Arrays.copyOf(all, distinct);
+
+        int rows = HOURS * hexes.length;
+        int[] tripRowStart = new int[rows + 1];
+        int[] rowOf = new int[n];
+        int[] destOf = new int[n];
+        double[] hourSum = new double[HOURS];
+        int[] hourCount = new int[HOURS];
+        for (int i = 0; i < n; i++) {
+            rowOf[i] = -1;
+            if (!usable(c, i)) continue;
+            int hour = c.hour(i);
+            rowOf[i] = hour * hexes.length + Arrays.binarySearch(hexes, c.pickupHex[i]);
+            destOf[i] = Arrays.binarySearch(hexes, c.dropHex[i]);
+            tripRowStart[rowOf[i] + 1]++;
+            hourSum[hour] += c.netEarnings[i] / c.durationMins[i];
+            hourCount[hour]++;
+        }
+        for (int r = 0; r < rows; r++) {
+            tripRowStart[r + 1] += tripRowStart[r];
+        }
+
+        // (destination, trip) pairs grouped by row, then sorted by destination within each row
+        long[] pairs = new long[tripRowStart[rows]];
+        int[] fill = Arrays.copyOf(tripRowStart, rows);
+        for (int i = 0; i < n; i++) {
+            if (rowOf[i] < 0) continue;
+            pairs[fill[rowOf[i]]++] = ((long) destOf[i] << 32) | i;
+        }
+
+        this.rowStart = new int[rows + 1];
+        this.outboundCount = new int[rows];
+        this.outboundEarningsPerMinute = new double[rows];
+        int[] dest = new int[pairs.length];
+        int[] count = new int[pairs.length];
+        double[] epm = new double[pairs.length];
+        double[] duration = new double[pairs.length];
+        int entries = 0;
+        for (int r = 0; r < rows; r++) {
+            int from = tripRowStart[r];
+            int to = tripRowStart[r + 1];
+            Arrays.sort(pairs, from, to);
+            double rowEpm = 0.0;
+            for (int p = from; p < to; p++) {
+                int d = (int) (pairs[p] >>> 32);
+                int i = (int) pairs[p];
+                if (p == from || d != dest[entries - 1]) {
+                    dest[entries++] = d;
+                }
+                int e = entries - 1;
+                double tripEpm = c.netEarnings[i] / c.durationMins[i];
+                count[e]++;
+                epm[e] += tripEpm;
+                duration[e] += c.durationMins[i];
+                rowEpm += tripEpm;
+            }
+            for (int e = rowStart[r]; e < entries; e++) {
+                epm[e] /= count[e];
+                duration[e] /= count[e];
+            }
+            rowStart[r + 1] = entries;
+            outboundCount[r] = to - from;
+            outboundEarningsPerMinute[r] = to == from ? 0.0 : rowEpm / (to - from);
+        }
+        this.destination = Arrays.copyOf(dest, entries);
+        this.tripCount = Arrays.copyOf(count, entries);
+        this.meanEarningsPerMinute = Arrays.copyOf(epm, entries);
+        this.meanDurationMins = Arrays.copyOf(duration, entries);
+
+        this.hourEarningsPerMinute = new double[HOURS];
+        for (int h = 0; h < HOURS; h++) {
+            hourEarningsPerMinute[h] = hourCount[h] == 0 ? 0.0 : hourSum[h] / hourCount[h];
+        }
+    }
+
+    // Trips need both hexes and a duration to be placed in the matrix.
+    private static boolean usable(TripEventStore.Columns c, int i) {
+        return c.pickupHex[i] != 0L && c.dropHex[i] != 0L && c.durationMins[i] > 0;
+    }
+
+    public int hexCount() {
+        return hexes.length;
+    }
+
+    public int entryCount() {
+        return destination.length;
+    }
+
+    public int tripCount(int hour, long originHex, long destinationHex) {
+        int e = entry(hour, originHex, destinationHex);
+        return e < 0 ? 0 : tripCount[e];
+    }
+
+    public double meanEarningsPerMinute(int hour, long originHex, long destinationHex) {
+        int e = entry(hour, originHex, destinationHex);
+        return e < 0 ? 0.0 : meanEarningsPerMinute[e];
+    }
+
+    public double meanDurationMins(int hour, long originHex, long destinationHex) {
+        int e = entry(hour, originHex, destinationHex);
+        return e < 0 ? 0.0 : meanDurationMins[e];
+    }
+
+    // Trips leaving originHex in the hour: how many there were and what they paid.
+    public int outboundTrips(int hour, long originHex) {
+        int r = row(hour, originHex);
+        return r < 0 ? 0 : outboundCount[r];
+    }
+
+    public double outboundEarningsPerMinute(int hour, long originHex) {
+        int r = row(hour, originHex);
+        return r < 0 ? 0.0 : outboundEarningsPerMinute[r];
+    }
+
+    // Outbound earnings per minute relative to the hour's mean; 0 when nothing leaves the hex.
+    public double outboundQuality(int hour, long originHex) {
+        int r = row(hour, originHex);
+        if (r < 0 || outboundCount[r] == 0 || hourEarningsPerMinute[hour] <= 0.0) return 0.0;
+        return outboundEarningsPerMinute[r] / hourEarningsPerMinute[hour];
+    }
+
+    // The same summary over several distinct origins, e.g. every pickup hex around a point.
+    public int outboundTrips(int hour, long[] originHexes) {
+        int trips = 0;
+        for (long hex : originHexes) {
+            trips += outboundTrips(hour, hex);
+        }
+        return trips;
+    }
+
+    public double outboundEarningsPerMinute(int hour, long[] originHexes) {
+        int trips = 0;
+        double sum = 0.0;
+        for (long hex : originHexes) {
+            int r = row(hour, hex);
+            if (r < 0) continue;
+            trips += outboundCount[r];
+            sum += outboundEarningsPerMinute[r] * outboundCount[r];
+        }
+        return trips == 0 ? 0.0 : sum / trips;
+    }
+
+    public double outboundQuality(int hour, long[] originHexes) {
+        if (hour < 0 || hour >= HOURS || hourEarningsPerMinute[hour] <= 0.0) return 0.0;
+        return outboundEarningsPerMinute(hour, originHexes) / hourEarningsPerMinute[hour];
+    }
+
+    private int row(int hour, long hex) {
+        if (hour < 0 || hour >= HOURS) return -1;
+        int id = Arrays.binarySearch(hexes, hex);
+        return id < 0 ? -1 : hour * hexes.length + id;
+    }
+
+    private int entry(int hour, long originHex, long destinationHex) {
+        int r = row(hour, originHex);
+        if (r < 0) return -1;
+        int d = Arrays.binarySearch(hexes, destinationHex);
+        if (d < 0) return -1;
+        int e = Arrays.binarySearch(destination, rowStart[r], rowStart[r + 1], d);
+        return e < 0 ? -1 : e;
+    }
+}
@@ -0,0 +1,137 @@
+package com.attentionseekers.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exponentially decayed event counts per (city, hex) and per (city, zone). Each counter stores its
+ * value as of its last update, so updates and reads are O(1): a counter that stops receiving events
+ * simply reads lower as time passes, and hex counters that have decayed to nothing are dropped
+ * when a read comes across them. Events decay from their own start time,
+ * which like the CSVs is local wall-clock time, so a backfilled event counts for what it is worth
+ * today rather than as brand-new demand.
+ */
+@Component
+public class RecentDemandTracker {
+
+    private static final int ZONE_COUNT = 3;
+    private static final int ALL_CITIES = 0;
+    // after about ten half-lives a hex no longer carries any signal
+    private static final double NEGLIGIBLE = 1e-3;
+
+    private final Clock clock;
+    private final double decayPerMilli;
+    private final EnumMap<EventDataset, ConcurrentHashMap<Long, DecayingCounter>> byCityZone = new EnumMap<>(EventDataset.class);
+    private final EnumMap<EventDataset, ConcurrentHashMap<Integer, ConcurrentHashMap<Long, DecayingCounter>>> byCityHex =
+            new EnumMap<>(EventDataset.class);
+
+    @Autowired
+    public RecentDemandTracker(@Value("${demand.recent.half-life-minutes:30}") long halfLifeMinutes) {
+        this(Duration.ofMinutes(halfLifeMinutes), Clock.systemDefaultZone());
+    }
+
+    public RecentDemandTracker(Duration halfLife, Clock clock) {
+        if (halfLife.isZero() || halfLife.isNegative()) {
+            throw new IllegalArgumentException("Half-life must be positive: " + halfLife);
+        }
+        this.clock = clock;
+        this.decayPerMilli = Math.log(2) / halfLife.toMillis();
+        for (EventDataset dataset : EventDataset.values()) {
+            byCityZone.put(dataset, new ConcurrentHashMap<>());
+            byCityHex.put(dataset, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void record(EventDataset dataset, int cityId, int zone, long pickupHex, int epochMinute) {
+        // a start time ahead of our clock counts as now rather than holding the counter up
+        long at = Math.min(epochMinute * 60_000L, nowMillis());
+        if (pickupHex != 0L) {
+            ConcurrentHashMap<Integer, ConcurrentHashMap<Long, DecayingCounter>> hexes = byCityHex.get(dataset);
+            hexCounter(hexes, ALL_CITIES, pickupHex).add(at, decayPerMilli);
+            if (cityId > 0) {
+                hexCounter(hexes, cityId, pickupHex).add(at, decayPerMilli);
+            }
+        }
+        if (zone < 0 || zone >= ZONE_COUNT) return;
+        ConcurrentHashMap<Long, DecayingCounter> zones = byCityZone.get(dataset);
+        zones.computeIfAbsent(cityZoneKey(ALL_CITIES, zone), k -> new DecayingCounter()).add(at, decayPerMilli);
+        if (cityId > 0) {
+            zones.computeIfAbsent(cityZoneKey(cityId, zone), k -> new DecayingCounter()).add(at, decayPerMilli);
+        }
+    }
+
+    // Decayed counts for zones 0..2 of one city, or of every city when cityId <= 0.
+    public double[] zoneRates(EventDataset dataset, int cityId) {
+        long now = nowMillis();
+        int city = cityId > 0 ? cityId : ALL_CITIES;
+        ConcurrentHashMap<Long, DecayingCounter> zones = byCityZone.get(dataset);
+        double[] out = new double[ZONE_COUNT];
+        for (int z = 0; z < ZONE_COUNT; z++) {
+            DecayingCounter counter = zones.get(cityZoneKey(city, z));
+            out[z] = counter == null ? 0.0 : counter.valueAt(now, decayPerMilli);
+        }
+        return out;
+    }
+
+    // Decayed counts per pickup hex of one city, or of every city when cityId <= 0.
+    public Map<Long, Double> hexRates(EventDataset dataset, int cityId) {
+        long now = nowMillis();
+        ConcurrentHashMap<Long, DecayingCounter> hexes = byCityHex.get(dataset).get(cityId > 0 ? cityId : ALL_CITIES);
+        Map<Long, Double> out = new HashMap<>();
+        if (hexes == null) return out;
+        hexes.forEach((hex, counter) -> {
+            double rate = counter.valueAt(now, decayPerMilli);
+            if (rate >= NEGLIGIBLE) {
+                out.put(hex, rate);
+            } else {
+                hexes.remove(hex, counter);
+            }
+        });
+        return out;
+    }
+
+    private static DecayingCounter hexCounter(ConcurrentHashMap<Integer, ConcurrentHashMap<Long, DecayingCounter>> hexes,
+                                              int cityId, long hex) {
+        return hexes.computeIfAbsent(cityId, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(hex, h -> new DecayingCounter());
+    }
+
+    // Local wall-clock time on the same scale as TripEventStore epoch minutes.
+    private long nowMillis() {
+        return LocalDateTime.now(clock).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static long cityZoneKey(int cityId, int zone) {
+        return ((long) cityId << 8) | zone;
+    }
+
+    private static final class DecayingCounter {
+        private double value;
+        private long lastUpdateMillis;
+
+        synchronized void add(long now, double decayPerMilli) {
+            if (now >= lastUpdateMillis) {
+                value = value * Math.exp(-decayPerMilli * (now - lastUpdateMillis)) + 1.0;
+                lastUpdateMillis = now;
+            } else {
+                // late arrival: decay the new event instead of rewinding the counter
+                value += Math.exp(-decayPerMilli * (lastUpdateMillis - now));
+            }
+        }
+
+        synchronized double valueAt(long now, double decayPerMilli) {
+            if (now <= lastUpdateMillis) return value;
+            return value * Math.exp(-decayPerMilli * (now - lastUpdateMillis));
+        }
+    }
+}
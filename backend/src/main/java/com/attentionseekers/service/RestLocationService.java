@@ -1,80 +1,497 @@
 package com.attentionseekers.service;
 
-import com.attentionseekers.dto.FeatureCollection;
+import com.attentionseekers.dto.RouteRestStop;
+import com.attentionseekers.dto.RouteRestStopRequest;
 import com.attentionseekers.model.RestLocation;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 @Service
 public class RestLocationService {
 
-    private final List<RestLocation> locations;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final double MAX_CORRIDOR_METERS = 5000.0;
+    private static final int MAX_ROUTE_POINTS = 1000;
+    private static final double MAX_ROUTE_KM = 1000.0;
+    private static final double ROUTE_PIECE_KM = 1.0;
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final JsonFactory json;
+    private final DataSnapshots snapshots;
+    private final DataSnapshot.Part<Locations> locations;
 
     public RestLocationService(ObjectMapper mapper) throws IOException {
+        this(mapper, new DataSnapshots(new DefaultResourceLoader()));
+    }
+
+    @Autowired
+    public RestLocationService(ObjectMapper mapper, DataSnapshots snapshots) throws IOException {
+        this.json = mapper.getFactory();
+        this.snapshots = snapshots;
+        Locations loaded = read(snapshots.resourceLoader());
+        if (loaded == null) loaded = new Locations(readBundled());
+        this.locations = snapshots.register(loaded);
+    }
+
+    private RestLocationStore readBundled() throws IOException {
         File candidate = new File("./backend/src/data/rest_locations.json");
         if (!candidate.exists()) candidate = new File("./src/data/rest_locations.json");
         if (!candidate.exists()) candidate = new File("./src/main/resources/data/rest_locations.json");
 
-        FeatureCollection data = null;
+        RestLocationStore store = RestLocationStore.EMPTY;
         if (candidate.exists()) {
-            data = mapper.readValue(candidate, FeatureCollection.class);
+            try (InputStream is = new FileInputStream(candidate)) {
+                store = RestLocationStore.parse(json, is);
+            }
         } else {
             InputStream is = getClass().getClassLoader().getResourceAsStream("rest_locations.json");
             if (is == null) {
                 is = getClass().getClassLoader().getResourceAsStream("data/rest_locations.json");
             }
             if (is != null) {
-                data = mapper.readValue(is, FeatureCollection.class);
+                try (InputStream in = is) {
+                    store = RestLocationStore.parse(json, in);
+                }
             }
         }
+        return store;
+    }
 
-        if (data == null) {
-            this.locations = Collections.emptyList();
-            return;
+    // Keeps the current locations when the loader has no rest_locations.json to offer.
+    void prepareReload(ResourceLoader resourceLoader, DataSnapshot.Builder next) throws IOException {
+        Locations loaded = read(resourceLoader);
+        if (loaded != null) next.put(locations, loaded);
+    }
+
+    // Replaces the locations on their own, outside a snapshot reload.
+    public void reload(ResourceLoader resourceLoader) throws IOException {
+        Locations loaded = read(resourceLoader);
+        if (loaded != null) snapshots.replace(locations, loaded);
+    }
+
+    DataSnapshots snapshots() {
+        return snapshots;
+    }
+
+    private Locations read(ResourceLoader resourceLoader) throws IOException {
+        Resource resource = resourceLoader.getResource("classpath:data/rest_locations.json");
+        if (!resource.exists()) return null;
+        try (InputStream is = resource.getInputStream()) {
+            return new Locations(RestLocationStore.parse(json, is));
         }
+    }
 
-        this.locations = data.getFeatures().stream()
-                .map(f -> {
-                    List<Double> coords = f.getGeometry().getCoordinates();
-                    return new RestLocation(
-                            f.getId(),
-                            (String) f.getProperties().getOrDefault("amenity", ""),
-                            (String) f.getProperties().getOrDefault("name", f.getProperties().get("name")),
-                            coords.size() > 1 ? coords.get(1) : 0.0,
-                            coords.size() > 0 ? coords.get(0) : 0.0
-                    );
-                })
-                .collect(Collectors.toList());
+    // Size, parse time and approximate column memory of the loaded locations.
+    public Map<String, Long> loadStats() {
+        RestLocationStore store = snapshots.current().get(locations).store;
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("locations", (long) store.size());
+        stats.put("parseMillis", store.parseMillis());
+        stats.put("approxBytes", store.approxBytes());
+        return stats;
+    }
 
-        System.out.println(locations.stream().limit(10).collect(Collectors.toList()));
+    // Every location, in file order.
+    public List<RestLocation> getAllLocations() {
+        RestLocationStore store = snapshots.current().get(locations).store;
+        List<RestLocation> out = new ArrayList<>(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            out.add(store.location(i));
+        }
+        return out;
     }
 
+    // Nearest first; ties keep file order.
     public List<RestLocation> findClosest(double lat, double lon, int limit) {
-        return locations.stream()
-                .sorted((a, b) -> {
-                    double d1 = distance(lat, lon, a.getLatitude(), a.getLongitude());
-                    double d2 = distance(lat, lon, b.getLatitude(), b.getLongitude());
-                    return Double.compare(d1, d2);
-                })
-                .limit(limit)
-                .collect(Collectors.toList());
-    }
-
-    private double distance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371;
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                        Math.sin(dLon/2) * Math.sin(dLon/2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        return R * c;
+        return findClosest(lat, lon, limit, null, Map.of());
+    }
+
+    // Nearest locations with the amenity (any when null) whose properties match every filter;
+    // only that amenity's partition is searched.
+    public List<RestLocation> findClosest(double lat, double lon, int limit, String amenity, Map<String, String> filters) {
+        checkPoint(lat, lon);
+        checkLimit(limit);
+        Locations l = snapshots.current().get(locations);
+        IntPredicate matches = propertyFilter(l.store, filters);
+        int[] nearest;
+        if (amenity == null) {
+            nearest = l.index.nearest(lat, lon, limit, matches);
+        } else {
+            int code = l.store.amenityCode(amenity);
+            if (code < 0) return new ArrayList<>();
+            Partition partition = l.byAmenity[code];
+            nearest = partition.index.nearest(lat, lon, limit, k -> matches.test(partition.rows[k]));
+            for (int k = 0; k < nearest.length; k++) {
+                nearest[k] = partition.rows[nearest[k]];
+            }
+        }
+        List<RestLocation> out = new ArrayList<>(nearest.length);
+        for (int i : nearest) {
+            out.add(l.store.location(i));
+        }
+        return out;
+    }
+
+    private static IntPredicate propertyFilter(RestLocationStore store, Map<String, String> filters) {
+        if (filters == null || filters.isEmpty()) return i -> true;
+        int[] keys = new int[filters.size()];
+        int[] values = new int[filters.size()];
+        int n = 0;
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            keys[n] = store.keyCode(filter.getKey());
+            values[n] = store.valueCode(filter.getValue());
+            // a key or value no location has cannot match
+            if (keys[n] < 0 || values[n] < 0) return i -> false;
+            n++;
+        }
+        return i -> {
+            for (int f = 0; f < keys.length; f++) {
+                if (!store.hasProperty(i, keys[f], values[f])) return false;
+            }
+            return true;
+        };
+    }
+
+    // Locations within radiusMeters of (lat, lon), in file order, one page after the cursor.
+    public Page findWithin(double lat, double lon, double radiusMeters, String cursor, int limit) {
+        checkPoint(lat, lon);
+        if (!(radiusMeters > 0) || Double.isInfinite(radiusMeters)) {
+            throw new IllegalArgumentException("radius must be positive: " + radiusMeters);
+        }
+        Locations l = snapshots.current().get(locations);
+        PageSelector page = new PageSelector(afterIndex(l, cursor), checkLimit(limit));
+        l.index.forEachWithin(lat, lon, radiusMeters / 1000.0, page);
+        return page.toPage(l);
+    }
+
+    // Locations inside the viewport, in file order; west > east spans the antimeridian.
+    public Page findInViewport(double south, double west, double north, double east, String cursor, int limit) {
+        checkPoint(south, west);
+        checkPoint(north, east);
+        if (south > north) throw new IllegalArgumentException("south must not exceed north");
+        Locations l = snapshots.current().get(locations);
+        PageSelector page = new PageSelector(afterIndex(l, cursor), checkLimit(limit));
+        l.index.forEachInBox(south, west, north, east, page);
+        return page.toPage(l);
+    }
+
+    // Locations within the corridor around a route, ordered by how far along the route they sit.
+    // Each leg is cut into pieces of at most ROUTE_PIECE_KM and every piece is one range query
+    // on the index, so the cost follows the corridor's area rather than the number of locations.
+    public List<RouteRestStop> findAlongRoute(RouteRestStopRequest request) {
+        List<double[]> route = routePoints(request);
+        double corridorMeters = request.getCorridorMeters();
+        if (!(corridorMeters > 0) || corridorMeters > MAX_CORRIDOR_METERS) {
+            throw new IllegalArgumentException("corridor must be between 0 and " + MAX_CORRIDOR_METERS + " meters");
+        }
+        int limit = checkLimit(request.getLimit());
+        double corridorKm = corridorMeters / 1000.0;
+
+        Locations l = snapshots.current().get(locations);
+        IntPredicate matches = propertyFilter(l.store, request.getFilters());
+        GeoKdTree index = l.index;
+        int[] rows = null;
+        if (request.getAmenity() != null) {
+            int code = l.store.amenityCode(request.getAmenity());
+            if (code < 0) return new ArrayList<>();
+            index = l.byAmenity[code].index;
+            rows = l.byAmenity[code].rows;
+        }
+
+        double[] lat = l.store.latitudes();
+        double[] lon = l.store.longitudes();
+        Map<Integer, RouteMatch> matched = new HashMap<>();
+        double travelled = 0.0;
+        for (int leg = 1; leg < route.size(); leg++) {
+            double[] from = route.get(leg - 1);
+            double[] to = route.get(leg);
+            double legKm = GeoDistance.haversineKm(from[0], from[1], to[0], to[1]);
+            int pieces = Math.max(1, (int) Math.ceil(legKm / ROUTE_PIECE_KM));
+            for (int p = 0; p < pieces; p++) {
+                RoutePiece piece = new RoutePiece(interpolate(from, to, (double) p / pieces),
+                        interpolate(from, to, (double) (p + 1) / pieces), travelled + legKm * p / pieces, legKm / pieces);
+                double[] mid = interpolate(piece.start, piece.end, 0.5);
+                int[] rowOf = rows;
+                // a little slack: the lat/lon midpoint is only approximately halfway along the arc
+                index.forEachWithin(mid[0], mid[1], piece.lengthKm * 0.51 + corridorKm * 1.01, k -> {
+                    int row = rowOf == null ? k : rowOf[k];
+                    if (matches.test(row)) piece.offer(row, lat[row], lon[row], corridorKm, matched);
+                });
+            }
+            travelled += legKm;
+        }
+
+        List<RouteMatch> ordered = new ArrayList<>(matched.values());
+        ordered.sort(Comparator.comparingDouble((RouteMatch m) -> m.alongKm)
+                .thenComparingDouble(m -> m.offKm)
+                .thenComparingInt(m -> m.row));
+        List<RouteRestStop> out = new ArrayList<>(Math.min(limit, ordered.size()));
+        for (RouteMatch m : ordered.subList(0, Math.min(limit, ordered.size()))) {
+            out.add(new RouteRestStop(l.store.location(m.row), m.alongKm, m.offKm * 1000.0));
+        }
+        return out;
+    }
+
+    private static List<double[]> routePoints(RouteRestStopRequest request) {
+        List<double[]> route = new ArrayList<>();
+        if (request.getPath() != null && !request.getPath().isEmpty()) {
+            for (List<Double> point : request.getPath()) {
+                if (point == null || point.size() < 2 || point.get(0) == null || point.get(1) == null) {
+                    throw new IllegalArgumentException("path points must be [lat, lon]");
+                }
+                route.add(new double[]{point.get(0), point.get(1)});
+            }
+        } else if (request.getPickupLat() != null && request.getPickupLon() != null
+                && request.getDropoffLat() != null && request.getDropoffLon() != null) {
+            route.add(new double[]{request.getPickupLat(), request.getPickupLon()});
+            route.add(new double[]{request.getDropoffLat(), request.getDropoffLon()});
+        } else {
+            throw new IllegalArgumentException("a path or pickup and dropoff coordinates are required");
+        }
+        if (route.size() < 2 || route.size() > MAX_ROUTE_POINTS) {
+            throw new IllegalArgumentException("a route needs between 2 and " + MAX_ROUTE_POINTS + " points");
+        }
+        double km = 0.0;
+        for (int i = 0; i < route.size(); i++) {
+            checkPoint(route.get(i)[0], route.get(i)[1]);
+            if (i > 0) km += GeoDistance.haversineKm(route.get(i - 1)[0], route.get(i - 1)[1], route.get(i)[0], route.get(i)[1]);
+        }
+        if (km > MAX_ROUTE_KM) {
+            throw new IllegalArgumentException("routes longer than " + MAX_ROUTE_KM + " km are not supported");
+        }
+        return route;
+    }
+
+    // Point at fraction f of the way from a to b in lat/lon, taking the short way across the antimeridian.
+    private static double[] interpolate(double[] a, double[] b, double f) {
+        double lon = a[1] + wrapLongitude(b[1] - a[1]) * f;
+        return new double[]{a[0] + (b[0] - a[0]) * f, wrapLongitude(lon)};
+    }
+
+    private static double wrapLongitude(double lon) {
+        if (lon > 180.0) return lon - 360.0;
+        if (lon < -180.0) return lon + 360.0;
+        return lon;
+    }
+
+    private static void checkPoint(double lat, double lon) {
+        if (!(lat >= -90.0 && lat <= 90.0) || !(lon >= -180.0 && lon <= 180.0)) {
+            throw new IllegalArgumentException("coordinates out of range: " + lat + ", " + lon);
+        }
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE + ": " + limit);
+        }
+        return limit;
+    }
+
+    // Cursors are "<generation>.<last index>" in base 36 and only valid for the snapshot that issued them.
+    private static int afterIndex(Locations l, String cursor) {
+        if (cursor == null || cursor.isEmpty()) return -1;
+        int dot = cursor.indexOf('.');
+        long generation;
+        int index;
+        try {
+            generation = Long.parseLong(cursor.substring(0, Math.max(dot, 0)), 36);
+            index = Integer.parseInt(cursor.substring(dot + 1), 36);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+        if (generation != l.generation) {
+            throw new IllegalArgumentException("cursor is from an older snapshot, restart the query");
+        }
+        return index;
+    }
+
+    // A short stretch of route, flattened onto a local plane to measure how far points are from it.
+    private static final class RoutePiece {
+        private final double[] start;
+        private final double[] end;
+        private final double startKm;
+        private final double lengthKm;
+        private final double kmPerLonDegree;
+        private final double dx;
+        private final double dy;
+
+        private RoutePiece(double[] start, double[] end, double startKm, double lengthKm) {
+            this.start = start;
+            this.end = end;
+            this.startKm = startKm;
+            this.lengthKm = lengthKm;
+            this.kmPerLonDegree = GeoDistance.KM_PER_DEGREE * GeoDistance.cosLatitude((start[0] + end[0]) / 2);
+            this.dx = wrapLongitude(end[1] - start[1]) * kmPerLonDegree;
+            this.dy = (end[0] - start[0]) * GeoDistance.KM_PER_DEGREE;
+        }
+
+        // Records the row if it lies within the corridor and closer to this piece than to any seen before.
+        private void offer(int row, double lat, double lon, double corridorKm, Map<Integer, RouteMatch> matched) {
+            double px = wrapLongitude(lon - start[1]) * kmPerLonDegree;
+            double py = (lat - start[0]) * GeoDistance.KM_PER_DEGREE;
+            double lengthSq = dx * dx + dy * dy;
+            double t = lengthSq == 0.0 ? 0.0 : Math.max(0.0, Math.min(1.0, (px * dx + py * dy) / lengthSq));
+            double offKm = Math.hypot(px - t * dx, py - t * dy);
+            if (offKm > corridorKm) return;
+            double alongKm = startKm + t * lengthKm;
+            RouteMatch current = matched.get(row);
+            if (current == null || offKm < current.offKm || (offKm == current.offKm && alongKm < current.alongKm)) {
+                matched.put(row, new RouteMatch(row, alongKm, offKm));
+            }
+        }
+    }
+
+    private static final class RouteMatch {
+        private final int row;
+        private final double alongKm;
+        private final double offKm;
+
+        private RouteMatch(int row, double alongKm, double offKm) {
+            this.row = row;
+            this.alongKm = alongKm;
+            this.offKm = offKm;
+        }
+    }
+
+    /** One page of a location query; the next page starts from nextCursor(), null on the last page. */
+    public static final class Page {
+        private final RestLocationStore store;
+        private final int[] rows;
+        private final String nextCursor;
+
+        private Page(RestLocationStore store, int[] rows, String nextCursor) {
+            this.store = store;
+            this.rows = rows;
+            this.nextCursor = nextCursor;
+        }
+
+        public int size() {
+            return rows.length;
+        }
+
+        public void forEach(Consumer<RestLocation> action) {
+            for (int row : rows) {
+                action.accept(store.location(row));
+            }
+        }
+
+        public String nextCursor() {
+            return nextCursor;
+        }
+    }
+
+    // Keeps the limit + 1 lowest matching indices after the cursor in a max-heap, so memory
+    // follows the page size however many locations match.
+    private static final class PageSelector implements IntConsumer {
+        private final int after;
+        private final int limit;
+        private final int[] heap;
+        private int size;
+
+        private PageSelector(int after, int limit) {
+            this.after = after;
+            this.limit = limit;
+            this.heap = new int[limit + 1];
+        }
+
+        @Override
+        public void accept(int i) {
+            if (i <= after) return;
+            if (size < heap.length) {
+                int pos = size++;
+                while (pos > 0 && heap[(pos - 1) >>> 1] < i) {
+                    heap[pos] = heap[(pos - 1) >>> 1];
+                    pos = (pos - 1) >>> 1;
+                }
+                heap[pos] = i;
+            } else if (i < heap[0]) {
+                int pos = 0;
+                while (true) {
+                    int child = pos * 2 + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+                    if (heap[child] <= i) break;
+                    heap[pos] = heap[child];
+                    pos = child;
+                }
+                heap[pos] = i;
+            }
+        }
+
+        private Page toPage(Locations l) {
+            int[] rows = Arrays.copyOf(heap, size);
+            Arrays.sort(rows);
+            if (size <= limit) return new Page(l.store, rows, null);
+            rows = Arrays.copyOf(rows, limit);
+            String next = Long.toString(l.generation, 36) + "." + Integer.toString(rows[limit - 1], 36);
+            return new Page(l.store, rows, next);
+        }
+    }
+
+    private static final class Locations {
+        private final long generation = GENERATIONS.incrementAndGet();
+        private final RestLocationStore store;
+        private final GeoKdTree index;
+        private final Partition[] byAmenity;
+
+        private Locations(RestLocationStore store) {
+            this.store = store;
+            this.index = new GeoKdTree(store.latitudes(), store.longitudes());
+            int[] counts = new int[store.amenityCount()];
+            for (int i = 0; i < store.size(); i++) {
+                counts[store.amenityOf(i)]++;
+            }
+            int[][] rows = new int[counts.length][];
+            for (int a = 0; a < counts.length; a++) {
+                rows[a] = new int[counts[a]];
+            }
+            int[] fill = new int[counts.length];
+            for (int i = 0; i < store.size(); i++) {
+                int a = store.amenityOf(i);
+                rows[a][fill[a]++] = i;
+            }
+            this.byAmenity = new Partition[counts.length];
+            for (int a = 0; a < counts.length; a++) {
+                byAmenity[a] = new Partition(store, rows[a]);
+            }
+        }
+    }
+
+    // Rows of one amenity, ascending, with their own tree; tree index k is store row rows[k].
+    private static final class Partition {
+        private final int[] rows;
+        private final GeoKdTree index;
+
+        private Partition(RestLocationStore store, int[] rows) {
+            this.rows = rows;
+            double[] lat = new double[rows.length];
+            double[] lon = new double[rows.length];
+            for (int k = 0; k < rows.length; k++) {
+                lat[k] = store.latitudes()[rows[k]];
+                lon[k] = store.longitudes()[rows[k]];
+            }
+            this.index = new GeoKdTree(lat, lon);
+        }
     }
 }
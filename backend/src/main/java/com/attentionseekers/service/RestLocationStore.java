@@ -0,0 +1,326 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.model.RestLocation;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rest locations we serve, read from GeoJSON token by token and kept as columns: primitive
+ * coordinates, ids and names packed into one char array each, and amenities and the remaining
+ * scalar properties as codes into dictionaries, so repeated tags such as parking=street_side are
+ * stored once. Nested properties and non-point geometry are skipped without being materialised,
+ * and RestLocation objects are only created for the rows a query returns.
+ */
+final class RestLocationStore {
+
+    static final RestLocationStore EMPTY = new RestLocationStore(new Builder(), 0L);
+
+    private final int size;
+    private final double[] lat;
+    private final double[] lon;
+    private final PackedStrings ids;
+    private final PackedStrings names;
+    private final String[] amenities;
+    private final int[] amenityCode;
+    // properties of row i are entries propertyStart[i] .. propertyStart[i + 1], as dictionary codes
+    private final int[] propertyStart;
+    private final int[] propertyKey;
+    private final int[] propertyValue;
+    private final Map<String, Integer> keyCodes;
+    private final Map<String, Integer> valueCodes;
+    private final long parseNanos;
+
+    private RestLocationStore(Builder b, long parseNanos) {
+        this.size = b.size;
+        this.lat = Arrays.copyOf(b.lat, size);
+        this.lon = Arrays.copyOf(b.lon, size);
+        this.ids = b.ids.build();
+        this.names = b.names.build();
+        this.amenities = b.amenities.toArray(new String[0]);
+        this.amenityCode = Arrays.copyOf(b.amenityCode, size);
+        this.propertyStart = Arrays.copyOf(b.propertyStart, size + 1);
+        this.propertyKey = Arrays.copyOf(b.propertyKey, propertyStart[size]);
+        this.propertyValue = Arrays.copyOf(b.propertyValue, propertyStart[size]);
+        this.keyCodes = b.keyCodes;
+        this.valueCodes = b.valueCodes;
+        this.parseNanos = parseNanos;
+    }
+
+    // Reads a GeoJSON FeatureCollection; features without point coordinates are skipped.
+    static RestLocationStore parse(JsonFactory factory, InputStream in) throws IOException {
+        long started = System.nanoTime();
+        Builder b = new Builder();
+        try (JsonParser p = factory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a GeoJSON object");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("features".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        readFeature(p, b);
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return new RestLocationStore(b, System.nanoTime() - started);
+    }
+
+    private static void readFeature(JsonParser p, Builder b) throws IOException {
+        String id = null;
+        String amenity = "";
+        String name = null;
+        double[] point = null;
+        b.clearProperties();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            switch (field) {
+                case "id" -> id = value.isScalarValue() ? p.getValueAsString() : skip(p);
+                case "properties" -> {
+                    if (value != JsonToken.START_OBJECT) {
+                        p.skipChildren();
+                        break;
+                    }
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String property = p.currentName();
+                        JsonToken propertyValue = p.nextToken();
+                        if (!propertyValue.isScalarValue()) {
+                            p.skipChildren();
+                        } else if ("amenity".equals(property)) {
+                            amenity = p.getValueAsString();
+                        } else if ("name".equals(property)) {
+                            name = p.getValueAsString();
+                        } else if (propertyValue != JsonToken.VALUE_NULL && !property.startsWith("@")) {
+                            b.addProperty(property, p.getValueAsString());
+                        }
+                    }
+                }
+                case "geometry" -> point = value == JsonToken.START_OBJECT ? readPoint(p) : skip(p);
+                default -> p.skipChildren();
+            }
+        }
+        if (point != null) b.add(id, amenity, name, point[1], point[0]);
+    }
+
+    // [lon, lat] of a geometry whose coordinates are a flat number array, else null.
+    private static double[] readPoint(JsonParser p) throws IOException {
+        double[] point = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (!"coordinates".equals(field) || value != JsonToken.START_ARRAY) {
+                p.skipChildren();
+                continue;
+            }
+            double[] read = new double[2];
+            int n = 0;
+            boolean flat = true;
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                if (p.currentToken().isNumeric()) {
+                    if (n < 2) read[n] = p.getDoubleValue();
+                    n++;
+                } else {
+                    flat = false;
+                    p.skipChildren();
+                }
+            }
+            point = flat && n >= 2 ? read : null;
+        }
+        return point;
+    }
+
+    private static <T> T skip(JsonParser p) throws IOException {
+        p.skipChildren();
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    double[] latitudes() {
+        return lat;
+    }
+
+    double[] longitudes() {
+        return lon;
+    }
+
+    String id(int i) {
+        return ids.get(i);
+    }
+
+    String name(int i) {
+        return names.get(i);
+    }
+
+    String amenity(int i) {
+        return amenities[amenityCode[i]];
+    }
+
+    int amenityCount() {
+        return amenities.length;
+    }
+
+    int amenityOf(int i) {
+        return amenityCode[i];
+    }
+
+    // Dictionary code of the amenity, or -1 when no location has it.
+    int amenityCode(String amenity) {
+        for (int a = 0; a < amenities.length; a++) {
+            if (amenities[a].equals(amenity)) return a;
+        }
+        return -1;
+    }
+
+    // Codes of a property key and value, or -1 when no location has them.
+    int keyCode(String key) {
+        return keyCodes.getOrDefault(key, -1);
+    }
+
+    int valueCode(String value) {
+        return valueCodes.getOrDefault(value, -1);
+    }
+
+    boolean hasProperty(int i, int key, int value) {
+        for (int e = propertyStart[i]; e < propertyStart[i + 1]; e++) {
+            if (propertyKey[e] == key) return propertyValue[e] == value;
+        }
+        return false;
+    }
+
+    RestLocation location(int i) {
+        return new RestLocation(id(i), amenity(i), name(i), lat[i], lon[i]);
+    }
+
+    long parseMillis() {
+        return parseNanos / 1_000_000L;
+    }
+
+    // Bytes held by the columns, not counting object headers.
+    long approxBytes() {
+        long bytes = (long) size * (Double.BYTES * 2 + Integer.BYTES * 2);
+        bytes += (long) propertyKey.length * Integer.BYTES * 2;
+        bytes += ids.approxBytes() + names.approxBytes();
+        for (String amenity : amenities) {
+            bytes += (long) amenity.length() * Character.BYTES;
+        }
+        for (String key : keyCodes.keySet()) {
+            bytes += (long) key.length() * Character.BYTES;
+        }
+        for (String value : valueCodes.keySet()) {
+            bytes += (long) value.length() * Character.BYTES;
+        }
+        return bytes;
+    }
+
+    /** Strings stored back to back in one char array; a negative length marks null. */
+    private static final class PackedStrings {
+        private final char[] chars;
+        private final int[] start;
+        private final int[] length;
+
+        private PackedStrings(char[] chars, int[] start, int[] length) {
+            this.chars = chars;
+            this.start = start;
+            this.length = length;
+        }
+
+        private String get(int i) {
+            return length[i] < 0 ? null : new String(chars, start[i], length[i]);
+        }
+
+        private long approxBytes() {
+            return (long) chars.length * Character.BYTES + (long) start.length * Integer.BYTES * 2;
+        }
+
+        private static final class Builder {
+            private final StringBuilder chars = new StringBuilder();
+            private int[] start = new int[256];
+            private int[] length = new int[256];
+            private int size;
+
+            private void add(String s) {
+                if (size == start.length) {
+                    start = Arrays.copyOf(start, size * 2);
+                    length = Arrays.copyOf(length, size * 2);
+                }
+                start[size] = chars.length();
+                length[size] = s == null ? -1 : s.length();
+                if (s != null) chars.append(s);
+                size++;
+            }
+
+            private PackedStrings build() {
+                char[] packed = new char[chars.length()];
+                chars.getChars(0, packed.length, packed, 0);
+                return new PackedStrings(packed, Arrays.copyOf(start, size), Arrays.copyOf(length, size));
+            }
+        }
+    }
+
+    private static final class Builder {
+        private int size;
+        private double[] lat = new double[256];
+        private double[] lon = new double[256];
+        private int[] amenityCode = new int[256];
+        private final PackedStrings.Builder ids = new PackedStrings.Builder();
+        private final PackedStrings.Builder names = new PackedStrings.Builder();
+        private final List<String> amenities = new ArrayList<>();
+        private final Map<String, Integer> amenityCodes = new HashMap<>();
+        private final Map<String, Integer> keyCodes = new HashMap<>();
+        private final Map<String, Integer> valueCodes = new HashMap<>();
+        private int[] propertyStart = new int[257];
+        private int[] propertyKey = new int[1024];
+        private int[] propertyValue = new int[1024];
+        // entries past propertyStart[size] belong to the feature being read
+        private int properties;
+
+        private void clearProperties() {
+            properties = propertyStart[size];
+        }
+
+        private void addProperty(String key, String value) {
+            if (properties == propertyKey.length) {
+                propertyKey = Arrays.copyOf(propertyKey, properties * 2);
+                propertyValue = Arrays.copyOf(propertyValue, properties * 2);
+            }
+            propertyKey[properties] = keyCodes.computeIfAbsent(key, k -> keyCodes.size());
+            propertyValue[properties] = valueCodes.computeIfAbsent(value, v -> valueCodes.size());
+            properties++;
+        }
+
+        private void add(String id, String amenity, String name, double latitude, double longitude) {
+            if (size == lat.length) {
+                lat = Arrays.copyOf(lat, size * 2);
+                lon = Arrays.copyOf(lon, size * 2);
+                amenityCode = Arrays.copyOf(amenityCode, size * 2);
+                propertyStart = Arrays.copyOf(propertyStart, size * 2 + 1);
+            }
+            lat[size] = latitude;
+            lon[size] = longitude;
+            amenityCode[size] = amenityCodes.computeIfAbsent(amenity == null ? "" : amenity, a -> {
+                amenities.add(a);
+                return amenities.size() - 1;
+            });
+            ids.add(id);
+            names.add(name);
+            size++;
+            propertyStart[size] = properties;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.attentionseekers.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Surge multiplier per city and hour in one dense array, plus the per-hour average over the
+ * cities that report that hour. Hours without an entry read as 1.0, as the old map lookups did.
+ * Both the trip analysis and the demand features read surge_by_hour.csv through this table.
+ */
+public final class SurgeTable {
+
+    private static final int HOURS = 24;
+    private static final double NO_SURGE = 1.0;
+
+    // surge[cityId * HOURS + hour]; NaN where the CSV had no entry
+    private final double[] surge;
+    private final double[] hourAverage;
+    private final int cityLimit;
+
+    // City ids start at 1; rows for other ids, hours outside 0..23 or a NaN surge are skipped.
+    SurgeTable(int[] cityIds, int[] hours, double[] surges, int count) {
+        int maxCity = 0;
+        for (int i = 0; i < count; i++) {
+            if (usable(cityIds[i], hours[i], surges[i])) maxCity = Math.max(maxCity, cityIds[i]);
+        }
+        this.cityLimit = maxCity + 1;
+        this.surge = new double[cityLimit * HOURS];
+        int[] rows = new int[cityLimit * HOURS];
+        for (int i = 0; i < count; i++) {
+            if (!usable(cityIds[i], hours[i], surges[i])) continue;
+            // repeated (city, hour) rows are averaged
+            surge[cityIds[i] * HOURS + hours[i]] += surges[i];
+            rows[cityIds[i] * HOURS + hours[i]]++;
+        }
+        for (int i = 0; i < surge.length; i++) {
+            surge[i] = rows[i] == 0 ? Double.NaN : surge[i] / rows[i];
+        }
+
+        this.hourAverage = new double[HOURS];
+        for (int h = 0; h < HOURS; h++) {
+            double sum = 0.0;
+            int n = 0;
+            for (int city = 0; city < cityLimit; city++) {
+                double s = surge[city * HOURS + h];
+                if (Double.isNaN(s)) continue;
+                sum += s;
+                n++;
+            }
+            hourAverage[h] = n == 0 ? NO_SURGE : sum / n;
+        }
+    }
+
+    // Reads surge_by_hour.csv rows, header first.
+    static SurgeTable fromRows(List<String[]> rows) {
+        String[] header = rows.get(0);
+        int cityIdx = TripEventStore.findHeaderIndex(header, 0, "city_id");
+        int hourIdx = TripEventStore.findHeaderIndex(header, 1, "hour");
+        int surgeIdx = TripEventStore.findHeaderIndex(header, 2, "surge_multiplier");
+        int n = rows.size() - 1;
+        int[] cityIds = new int[n];
+        int[] hours = new int[n];
+        double[] surges = new double[n];
+        for (int r = 0; r < n; r++) {
+            String[] fields = rows.get(r + 1);
+            cityIds[r] = parseInt(TripEventStore.safeGet(fields, cityIdx));
+            hours[r] = parseInt(TripEventStore.safeGet(fields, hourIdx));
+            surges[r] = TripEventStore.parseDouble(TripEventStore.safeGet(fields, surgeIdx), Double.NaN);
+        }
+        return new SurgeTable(cityIds, hours, surges, n);
+    }
+
+    private static int parseInt(String raw) {
+        try {
+            return Integer.parseInt(raw.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean usable(int cityId, int hour, double surge) {
+        return cityId > 0 && hour >= 0 && hour < HOURS && !Double.isNaN(surge);
+    }
+
+    public double surge(int cityId, int hour) {
+        if (cityId < 0 || cityId >= cityLimit || hour < 0 || hour >= HOURS) return NO_SURGE;
+        double s = surge[cityId * HOURS + hour];
+        return Double.isNaN(s) ? NO_SURGE : s;
+    }
+
+    public double averageSurge(int hour) {
+        return hour < 0 || hour >= HOURS ? NO_SURGE : hourAverage[hour];
+    }
+
+    // Surge in the city for the given hour and the `hours` after it, wrapping past midnight.
+    public Lookahead lookahead(int cityId, int hour, int hours) {
+        checkLookahead(hour, hours);
+        double[] trajectory = new double[hours + 1];
+        for (int k = 0; k <= hours; k++) {
+            trajectory[k] = surge(cityId, (hour + k) % HOURS);
+        }
+        return new Lookahead(hour, trajectory);
+    }
+
+    // Same as lookahead(), over the all-city hourly averages.
+    public Lookahead averageLookahead(int hour, int hours) {
+        checkLookahead(hour, hours);
+        double[] trajectory = new double[hours + 1];
+        for (int k = 0; k <= hours; k++) {
+            trajectory[k] = hourAverage[(hour + k) % HOURS];
+        }
+        return new Lookahead(hour, trajectory);
+    }
+
+    private static void checkLookahead(int hour, int hours) {
+        if (hour < 0 || hour >= HOURS) {
+            throw new IllegalArgumentException("Hour must be between 0 and 23");
+        }
+        if (hours < 1 || hours >= HOURS) {
+            throw new IllegalArgumentException("Lookahead must be between 1 and 23 hours");
+        }
+    }
+
+    /** Surge for an hour and the hours after it; offset 0 is the starting hour. */
+    public static final class Lookahead {
+        private final int hour;
+        private final double[] trajectory;
+        private final int bestOffset;
+
+        private Lookahead(int hour, double[] trajectory) {
+            this.hour = hour;
+            this.trajectory = trajectory;
+            int best = 1;
+            for (int k = 2; k < trajectory.length; k++) {
+                if (trajectory[k] > trajectory[best]) best = k;
+            }
+            this.bestOffset = best;
+        }
+
+        public int hour() {
+            return hour;
+        }
+
+        public int hours() {
+            return trajectory.length - 1;
+        }
+
+        public double current() {
+            return trajectory[0];
+        }
+
+        // Surge `offset` hours from now, 0 <= offset <= hours().
+        public double surge(int offset) {
+            return trajectory[offset];
+        }
+
+        // Change from the hour before, for 1 <= offset <= hours().
+        public double delta(int offset) {
+            if (offset < 1) throw new IndexOutOfBoundsException(offset);
+            return trajectory[offset] - trajectory[offset - 1];
+        }
+
+        // Offset of the highest upcoming surge, the earliest on ties.
+        public int bestOffset() {
+            return bestOffset;
+        }
+
+        public int bestHour() {
+            return (hour + bestOffset) % HOURS;
+        }
+
+        public double bestSurge() {
+            return trajectory[bestOffset];
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.attentionseekers.service;
+
+/**
+ * One-pass summary of a set of trips: count, Welford mean/variance, min/max and a threshold
+ * count of earnings per minute, plus mean surge and distance. Instances are reusable via
+ * {@link #reset(double)} and never box or buffer the values they are fed.
+ */
+public final class TripAggregate {
+
+    private double threshold;
+    private int count;
+    private double mean;
+    private double m2;
+    private double min;
+    private double max;
+    private int aboveThreshold;
+    private double surgeSum;
+    private double distanceSum;
+
+    public TripAggregate() {
+        reset(Double.POSITIVE_INFINITY);
+    }
+
+    // Clears the aggregate; aboveThreshold() then counts earnings per minute strictly above threshold.
+    public TripAggregate reset(double threshold) {
+        this.threshold = threshold;
+        count = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        aboveThreshold = 0;
+        surgeSum = 0.0;
+        distanceSum = 0.0;
+        return this;
+    }
+
+    public void add(double earningsPerMinute, double surge, double distanceKm) {
+        count++;
+        double delta = earningsPerMinute - mean;
+        mean += delta / count;
+        m2 += delta * (earningsPerMinute - mean);
+        if (earningsPerMinute < min) min = earningsPerMinute;
+        if (earningsPerMinute > max) max = earningsPerMinute;
+        if (earningsPerMinute > threshold) aboveThreshold++;
+        surgeSum += surge;
+        distanceSum += distanceKm;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public double meanEarningsPerMinute() {
+        return mean;
+    }
+
+    // Population variance, matching how trip consistency has always been scored.
+    public double earningsPerMinuteVariance() {
+        return count == 0 ? 0.0 : m2 / count;
+    }
+
+    public double minEarningsPerMinute() {
+        return count == 0 ? 0.0 : min;
+    }
+
+    public double maxEarningsPerMinute() {
+        return count == 0 ? 0.0 : max;
+    }
+
+    public int aboveThreshold() {
+        return aboveThreshold;
+    }
+
+    public double meanSurge() {
+        return count == 0 ? 1.0 : surgeSum / count;
+    }
+
+    public double meanDistanceKm() {
+        return count == 0 ? 0.0 : distanceSum / count;
+    }
+}
@@ -1,32 +1,124 @@
 package com.attentionseekers.service;
 
 import com.attentionseekers.dto.TripAnalysisRequest;
+import com.attentionseekers.dto.TripOfferScore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 @Service
-public class TripAnalysisService {
+public class TripAnalysisService implements AutoCloseable {
 
     private final HistoricalTripDataLoader dataLoader;
+    private final DataSnapshots snapshots;
     private static final double NEARBY_RADIUS_KM = 5.0;
-    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final int DEFAULT_BATCH_THREADS = 4;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final int ANALYSIS_CACHE_SIZE = 4096;
+    // ~550 m north-south; coordinates are snapped to cell centres before analysis
+    private static final double LOCATION_CELL_DEGREES = 0.005;
+    private static final long NO_CELL = Long.MIN_VALUE;
+    private static final int ALL_CITIES = 0;
+    // cities we operate in are tens of km apart; a pickup further than this from any trip stays unassigned
+    private static final double CITY_SNAP_KM = 15.0;
+    private static final int SURGE_LOOKAHEAD_HOURS = 3;
+
+    private final ThreadPoolExecutor batchExecutor;
+    private final int maxBatchSize;
+    private final AnalysisCache analysisCache = new AnalysisCache(ANALYSIS_CACHE_SIZE);
 
     public TripAnalysisService(HistoricalTripDataLoader dataLoader) {
+        this(dataLoader, DEFAULT_BATCH_THREADS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    @Autowired
+    public TripAnalysisService(HistoricalTripDataLoader dataLoader,
+                               @Value("${trip-analysis.batch.threads:4}") int batchThreads,
+                               @Value("${trip-analysis.batch.max-offers:100}") int maxBatchSize) {
+        if (batchThreads <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch threads and size must be positive");
+        }
         this.dataLoader = dataLoader;
+        this.snapshots = dataLoader.snapshots();
+        this.maxBatchSize = maxBatchSize;
+        // A full queue makes the submitting request thread score the offer itself.
+        this.batchExecutor = new ThreadPoolExecutor(batchThreads, batchThreads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxBatchSize), daemonThreads(), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.batchExecutor.allowCoreThreadTimeOut(true);
     }
 
     public String analyzeTripRequest(TripAnalysisRequest request) {
-        int currentHour = LocalTime.now().getHour();
+        return evaluate(request, new AnalysisContext(LocalTime.now().getHour(), false)).suggestion;
+    }
+
+    // Scores every offer against one shared hour context and returns them best first.
+    public List<TripOfferScore> analyzeTripBatch(List<TripAnalysisRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("At least one offer is required");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("At most " + maxBatchSize + " offers per batch");
+        }
+
+        AnalysisContext context = new AnalysisContext(LocalTime.now().getHour(), true);
+        // workers score against the snapshot this request started on
+        DataSnapshot snapshot = snapshots.current();
+        List<Future<Evaluation>> futures = new ArrayList<>(requests.size());
+        for (TripAnalysisRequest request : requests) {
+            futures.add(batchExecutor.submit(() -> snapshots.withPinned(snapshot, () -> evaluate(request, context))));
+        }
+
+        List<TripOfferScore> scored = new ArrayList<>(requests.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Evaluation e = futures.get(i).get();
+                scored.add(new TripOfferScore(i, 0, e.score, getRecommendation(e.score), e.suggestion));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Interrupted while scoring offers", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Failed to score offer", e.getCause());
+        }
+
+        scored.sort(Comparator.comparingDouble(TripOfferScore::getScore).reversed()
+                .thenComparingInt(TripOfferScore::getIndex));
+        for (int rank = 0; rank < scored.size(); rank++) {
+            scored.get(rank).setRank(rank + 1);
+        }
+        return scored;
+    }
+
+    public Map<String, Long> cacheStats() {
+        return analysisCache.stats();
+    }
+
+    public void invalidateCache() {
+        analysisCache.clear();
+    }
+
+    @Override
+    public void close() {
+        batchExecutor.shutdownNow();
+    }
 
+    private Evaluation evaluate(TripAnalysisRequest request, AnalysisContext context) {
         Double pickupLat = parseCoordinate(request.getPickupLat());
         Double pickupLon = parseCoordinate(request.getPickupLon());
         Double dropoffLat = parseCoordinate(request.getDropOffLat());
         Double dropoffLon = parseCoordinate(request.getDropOffLon());
 
-        HistoricalAnalysis analysis = analyzeHistoricalData(
-                currentHour, pickupLat, pickupLon, dropoffLat, dropoffLon);
+        AnalysisContext.CityScope scope = context.scope(resolveCity(request, pickupLat, pickupLon));
+        HistoricalAnalysis analysis = scope.analysisFor(pickupLat, pickupLon, dropoffLat, dropoffLon);
 
         double finalScore = calculateFinalScore(request, analysis);
 
@@ -34,10 +126,10 @@ public class TripAnalysisService {
         String reason = buildReason(request, analysis);
         String pickupInsight = getPickupLocationInsight(analysis, pickupLat, pickupLon);
         String dropoffInsight = getDropoffLocationInsight(analysis, dropoffLat, dropoffLon);
-        String waitAdvice = getWaitAdvice(analysis, currentHour);
+        String waitAdvice = getWaitAdvice(analysis);
         String competitorInsight = getCompetitorInsight(analysis);
 
-        return String.format(
+        String suggestion = String.format(
                 "%s\n%s\n\n💰 Earnings: $%.2f\n⏱️ Time: %d mins\n📍 Distance: %.1f miles\n🎯 Score: %.1f/10\n\n%s\n%s\n%s\n%s",
                 recommendation,
                 reason,
@@ -50,131 +142,68 @@ public class TripAnalysisService {
                 waitAdvice,
                 competitorInsight
         );
+        return new Evaluation(finalScore, suggestion);
     }
 
-    private HistoricalAnalysis analyzeHistoricalData(int currentHour,
+    private HistoricalAnalysis analyzeHistoricalData(AnalysisContext.CityScope scope,
                                                      Double pickupLat, Double pickupLon,
                                                      Double dropoffLat, Double dropoffLon) {
         HistoricalAnalysis analysis = new HistoricalAnalysis();
 
-        List<HistoricalTripDataLoader.TripRecord> allHourTrips = dataLoader.getTripsForHour(currentHour);
-
-        if (!allHourTrips.isEmpty()) {
-            analysis.avgEarningsPerMinute = allHourTrips.stream()
-                    .mapToDouble(t -> t.netEarnings / t.durationMins)
-                    .average()
-                    .orElse(0.0);
+        HistoricalTripDataLoader.BaselineStats baseline = scope.baseline;
 
-            analysis.avgSurgeThisHour = allHourTrips.stream()
-                    .mapToDouble(t -> t.surgeMultiplier)
-                    .average()
-                    .orElse(1.0);
+        if (baseline.tripCount > 0) {
+            analysis.avgEarningsPerMinute = baseline.avgEarningsPerMinute;
+            analysis.topPerformerEarningsPerMin = baseline.p75EarningsPerMinute;
+            analysis.avgDistance = baseline.avgDistanceKm;
+            analysis.avgDuration = baseline.avgDurationMins;
 
             if (pickupLat != null && pickupLon != null) {
-                List<HistoricalTripDataLoader.TripRecord> nearbyPickupTrips = allHourTrips.stream()
-                        .filter(t -> calculateDistance(pickupLat, pickupLon, t.pickupLat, t.pickupLon) <= NEARBY_RADIUS_KM)
-                        .toList();
-
-                if (!nearbyPickupTrips.isEmpty()) {
-                    analysis.nearbyPickupTripsCount = nearbyPickupTrips.size();
-
-                    analysis.nearbyPickupAvgEarningsPerMinute = nearbyPickupTrips.stream()
-                            .mapToDouble(t -> t.netEarnings / t.durationMins)
-                            .average()
-                            .orElse(0.0);
+                TripAggregate nearbyPickup = scope.pickupsNear(pickupLat, pickupLon);
 
-                    analysis.nearbyPickupAvgSurge = nearbyPickupTrips.stream()
-                            .mapToDouble(t -> t.surgeMultiplier)
-                            .average()
-                            .orElse(1.0);
-
-                    analysis.nearbyPickupAvgDistance = nearbyPickupTrips.stream()
-                            .mapToDouble(t -> t.distanceKm)
-                            .average()
-                            .orElse(0.0);
+                if (nearbyPickup.count() > 0) {
+                    analysis.nearbyPickupTripsCount = nearbyPickup.count();
+                    analysis.nearbyPickupAvgEarningsPerMinute = nearbyPickup.meanEarningsPerMinute();
+                    analysis.nearbyPickupAvgSurge = nearbyPickup.meanSurge();
+                    analysis.nearbyPickupAvgDistance = nearbyPickup.meanDistanceKm();
 
                     analysis.pickupLocationProfitabilityIndex =
                             analysis.nearbyPickupAvgEarningsPerMinute / Math.max(0.01, analysis.avgEarningsPerMinute);
 
-                    analysis.pickupHasHotspotDestinations = nearbyPickupTrips.stream()
-                            .filter(t -> t.netEarnings / t.durationMins > analysis.avgEarningsPerMinute * 1.2)
-                            .count() > nearbyPickupTrips.size() * 0.3;
+                    analysis.pickupHasHotspotDestinations = nearbyPickup.aboveThreshold() > nearbyPickup.count() * 0.3;
 
-                    double pickupVariance = calculateVariance(
-                            nearbyPickupTrips.stream()
-                                    .mapToDouble(t -> t.netEarnings / t.durationMins)
-                                    .toArray()
-                    );
+                    double pickupVariance = nearbyPickup.earningsPerMinuteVariance();
                     analysis.pickupLocationConsistency = pickupVariance < 0.5 ? 1.0 : (pickupVariance < 1.0 ? 0.7 : 0.4);
                 }
             }
 
             if (dropoffLat != null && dropoffLon != null) {
-                List<HistoricalTripDataLoader.TripRecord> nearbyDropoffTrips = allHourTrips.stream()
-                        .filter(t -> calculateDistance(dropoffLat, dropoffLon, t.dropLat, t.dropLon) <= NEARBY_RADIUS_KM)
-                        .toList();
-
-                if (!nearbyDropoffTrips.isEmpty()) {
-                    analysis.nearbyDropoffTripsCount = nearbyDropoffTrips.size();
-
-                    List<HistoricalTripDataLoader.TripRecord> returnTripPotential = allHourTrips.stream()
-                            .filter(t -> calculateDistance(dropoffLat, dropoffLon, t.pickupLat, t.pickupLon) <= NEARBY_RADIUS_KM)
-                            .toList();
+                TripAggregate nearbyDropoff = scope.dropsNear(dropoffLat, dropoffLon);
 
-                    analysis.returnTripCount = returnTripPotential.size();
-
-                    if (!returnTripPotential.isEmpty()) {
-                        analysis.returnTripAvgEarnings = returnTripPotential.stream()
-                                .mapToDouble(t -> t.netEarnings / t.durationMins)
-                                .average()
-                                .orElse(0.0);
-
-                        analysis.returnTripAvgSurge = returnTripPotential.stream()
-                                .mapToDouble(t -> t.surgeMultiplier)
-                                .average()
-                                .orElse(1.0);
-
-                        analysis.returnTripQualityIndex =
-                                analysis.returnTripAvgEarnings / Math.max(0.01, analysis.avgEarningsPerMinute);
-                    }
-
-                    analysis.dropoffAvgEarningsPerMinute = nearbyDropoffTrips.stream()
-                            .mapToDouble(t -> t.netEarnings / t.durationMins)
-                            .average()
-                            .orElse(0.0);
+                if (nearbyDropoff.count() > 0) {
+                    analysis.nearbyDropoffTripsCount = nearbyDropoff.count();
+                    analysis.dropoffAvgEarningsPerMinute = nearbyDropoff.meanEarningsPerMinute();
 
                     analysis.dropoffLocationProfitabilityIndex =
                             analysis.dropoffAvgEarningsPerMinute / Math.max(0.01, analysis.avgEarningsPerMinute);
 
-                    double dropoffVariance = calculateVariance(
-                            returnTripPotential.stream()
-                                    .mapToDouble(t -> t.netEarnings / t.durationMins)
-                                    .toArray()
-                    );
+                    double dropoffVariance = nearbyDropoff.earningsPerMinuteVariance();
                     analysis.dropoffAreaConsistency = dropoffVariance < 0.5 ? 1.0 : (dropoffVariance < 1.0 ? 0.7 : 0.4);
                 }
-            }
-            
-            List<Double> earningsPerMin = allHourTrips.stream()
-                    .map(t -> t.netEarnings / t.durationMins)
-                    .sorted()
-                    .toList();
-            int p75Index = (int) (earningsPerMin.size() * 0.75);
-            analysis.topPerformerEarningsPerMin = earningsPerMin.get(Math.min(p75Index, earningsPerMin.size() - 1));
-
-            analysis.avgDistance = allHourTrips.stream()
-                    .mapToDouble(t -> t.distanceKm)
-                    .average()
-                    .orElse(0.0);
 
-            analysis.avgDuration = allHourTrips.stream()
-                    .mapToDouble(t -> t.durationMins)
-                    .average()
-                    .orElse(0.0);
+                // Return trips are this hour's trips out of every pickup hex of the city near the
+                // dropoff, read from the OD matrix rows of those hexes.
+                long[] returnHexes = scope.pickupHexesNear(dropoffLat, dropoffLon);
+                if (returnHexes.length > 0) {
+                    OriginDestinationMatrix od = dataLoader.getOriginDestinationMatrix();
+                    analysis.returnTripCount = od.outboundTrips(scope.hour(), returnHexes);
+                    analysis.returnTripAvgEarnings = od.outboundEarningsPerMinute(scope.hour(), returnHexes);
+                    analysis.returnTripQualityIndex = od.outboundQuality(scope.hour(), returnHexes);
+                }
+            }
         }
 
-        analysis.nextHourSurge = dataLoader.getAverageSurgeForHour((currentHour + 1) % 24);
-        analysis.twoHoursLaterSurge = dataLoader.getAverageSurgeForHour((currentHour + 2) % 24);
+        analysis.surgeOutlook = scope.surgeOutlook;
 
         return analysis;
     }
@@ -287,7 +316,8 @@ public class TripAnalysisService {
             score -= 0.3;
         }
 
-        score += (Math.random() - 0.5) * 0.4;
+        // Jitter stays, but seeded from the offer so identical offers always score the same.
+        score += (new SplittableRandom(jitterSeed(request)).nextDouble() - 0.5) * 0.4;
 
         return Math.max(0.0, Math.min(score, 10.0));
     }
@@ -428,15 +458,17 @@ public class TripAnalysisService {
         return insight.toString();
     }
 
-    private String getWaitAdvice(HistoricalAnalysis analysis, int currentHour) {
-        double currentSurge = analysis.avgSurgeThisHour;
+    private String getWaitAdvice(HistoricalAnalysis analysis) {
+        SurgeTable.Lookahead outlook = analysis.surgeOutlook;
+        double currentSurge = outlook.current();
+        double nextHourSurge = outlook.surge(1);
 
-        if (analysis.nextHourSurge > currentSurge * 1.2) {
+        if (nextHourSurge > currentSurge * 1.2) {
             return String.format("⏰ Surge rising %.0f%% next hour",
-                    (analysis.nextHourSurge / currentSurge - 1) * 100);
-        } else if (analysis.twoHoursLaterSurge > currentSurge * 1.3) {
-            return "⏰ Much better surge in 2 hours";
-        } else if (currentSurge > analysis.nextHourSurge * 1.15) {
+                    (nextHourSurge / currentSurge - 1) * 100);
+        } else if (outlook.bestSurge() > currentSurge * 1.3) {
+            return String.format("⏰ Much better surge in %d hours", outlook.bestOffset());
+        } else if (currentSurge > nextHourSurge * 1.15) {
             return "⏰ Take now, surge declining";
         } else {
             return "⏰ Stable demand";
@@ -451,47 +483,268 @@ public class TripAnalysisService {
         return "📊 Limited competitor data";
     }
 
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
+    // The requested city, else the city of the nearest historical trip to the pickup.
+    private int resolveCity(TripAnalysisRequest request, Double pickupLat, Double pickupLon) {
+        if (request.getCityId() != null) return request.getCityId();
+        if (pickupLat == null || pickupLon == null) return ALL_CITIES;
+        return dataLoader.cityNear(pickupLat, pickupLon, CITY_SNAP_KM);
+    }
+
+    private Double parseCoordinate(String coord) {
+        if (coord == null || coord.isBlank()) return null;
+        try {
+            return Double.parseDouble(coord.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "trip-analysis-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Everything that depends only on the hour and city, plus the radius aggregates shared by a batch.
+    private final class AnalysisContext {
+        private final int hour;
+        private final Map<Integer, CityScope> scopes = new ConcurrentHashMap<>();
+        private final Map<NearbyKey, TripAggregate> shared;
+
+        private AnalysisContext(int hour, boolean shareAggregates) {
+            this.hour = hour;
+            this.shared = shareAggregates ? new ConcurrentHashMap<>() : null;
+        }
+
+        // The city's partition for this hour; cities without trips this hour use every city's.
+        private CityScope scope(int cityId) {
+            if (cityId != ALL_CITIES && dataLoader.getBaselineForCityAndHour(cityId, hour).tripCount == 0) {
+                cityId = ALL_CITIES;
+            }
+            return scopes.computeIfAbsent(cityId, CityScope::new);
+        }
+
+        // Baseline, surge outlook and trip partition that offers in one city are compared against.
+        private final class CityScope {
+            private final int cityId;
+            private final HistoricalTripDataLoader.BaselineStats baseline;
+            private final SurgeTable.Lookahead surgeOutlook;
+            private final double hotspotThreshold;
+
+            private CityScope(int cityId) {
+                this.cityId = cityId;
+                if (cityId == ALL_CITIES) {
+                    this.baseline = dataLoader.getBaselineForHour(hour);
+                    this.surgeOutlook = dataLoader.getSurgeLookahead(hour, SURGE_LOOKAHEAD_HOURS);
+                } else {
+                    this.baseline = dataLoader.getBaselineForCityAndHour(cityId, hour);
+                    this.surgeOutlook = dataLoader.getSurgeLookahead(cityId, hour, SURGE_LOOKAHEAD_HOURS);
+                }
+                this.hotspotThreshold = baseline.avgEarningsPerMinute * 1.2;
+            }
+
+            private int hour() {
+                return hour;
+            }
+
+            // Historical analysis for the cells containing both points, memoised across requests.
+            private HistoricalAnalysis analysisFor(Double pickupLat, Double pickupLon, Double dropoffLat, Double dropoffLon) {
+                AnalysisKey key = new AnalysisKey(snapshots.current().getVersion(), cityId, hour,
+                        cell(pickupLat), cell(pickupLon), cell(dropoffLat), cell(dropoffLon));
+                return analysisCache.get(key, () -> analyzeHistoricalData(this,
+                        cellCentre(key.pickupLatCell), cellCentre(key.pickupLonCell),
+                        cellCentre(key.dropoffLatCell), cellCentre(key.dropoffLonCell)));
+            }
+
+            private TripAggregate pickupsNear(double lat, double lon) {
+                if (shared == null) return computePickupsNear(lat, lon);
+                return shared.computeIfAbsent(new NearbyKey(cityId, true, lat, lon), k -> computePickupsNear(lat, lon));
+            }
+
+            private TripAggregate dropsNear(double lat, double lon) {
+                if (shared == null) return computeDropsNear(lat, lon);
+                return shared.computeIfAbsent(new NearbyKey(cityId, false, lat, lon), k -> computeDropsNear(lat, lon));
+            }
+
+            private long[] pickupHexesNear(double lat, double lon) {
+                return cityId == ALL_CITIES
+                        ? dataLoader.pickupHexesNear(hour, lat, lon, NEARBY_RADIUS_KM)
+                        : dataLoader.pickupHexesNear(cityId, hour, lat, lon, NEARBY_RADIUS_KM);
+            }
+
+            private TripAggregate computePickupsNear(double lat, double lon) {
+                TripAggregate into = new TripAggregate().reset(hotspotThreshold);
+                return cityId == ALL_CITIES
+                        ? dataLoader.aggregatePickupsNear(hour, lat, lon, NEARBY_RADIUS_KM, into)
+                        : dataLoader.aggregatePickupsNear(cityId, hour, lat, lon, NEARBY_RADIUS_KM, into);
+            }
+
+            private TripAggregate computeDropsNear(double lat, double lon) {
+                TripAggregate into = new TripAggregate().reset(hotspotThreshold);
+                return cityId == ALL_CITIES
+                        ? dataLoader.aggregateDropsNear(hour, lat, lon, NEARBY_RADIUS_KM, into)
+                        : dataLoader.aggregateDropsNear(cityId, hour, lat, lon, NEARBY_RADIUS_KM, into);
+            }
+        }
+    }
+
+    private static long jitterSeed(TripAnalysisRequest request) {
+        return Objects.hash(request.getTotalEarnings(), request.getEstimatedDuration(), request.getDistance(),
+                request.getSurgeMultiplier(), request.getPickupLat(), request.getPickupLon(),
+                request.getDropOffLat(), request.getDropOffLon());
+    }
+
+    private static long cell(Double coordinate) {
+        return coordinate == null ? NO_CELL : Math.round(coordinate / LOCATION_CELL_DEGREES);
+    }
 
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+    private static Double cellCentre(long cell) {
+        return cell == NO_CELL ? null : cell * LOCATION_CELL_DEGREES;
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    private static final class AnalysisKey {
+        private final long version;
+        private final int cityId;
+        private final int hour;
+        private final long pickupLatCell;
+        private final long pickupLonCell;
+        private final long dropoffLatCell;
+        private final long dropoffLonCell;
+
+        private AnalysisKey(long version, int cityId, int hour, long pickupLatCell, long pickupLonCell,
+                            long dropoffLatCell, long dropoffLonCell) {
+            this.version = version;
+            this.cityId = cityId;
+            this.hour = hour;
+            this.pickupLatCell = pickupLatCell;
+            this.pickupLonCell = pickupLonCell;
+            this.dropoffLatCell = dropoffLatCell;
+            this.dropoffLonCell = dropoffLonCell;
+        }
 
-        return EARTH_RADIUS_KM * c;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof AnalysisKey that)) return false;
+            return version == that.version && cityId == that.cityId && hour == that.hour
+                    && pickupLatCell == that.pickupLatCell && pickupLonCell == that.pickupLonCell
+                    && dropoffLatCell == that.dropoffLatCell && dropoffLonCell == that.dropoffLonCell;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, cityId, hour, pickupLatCell, pickupLonCell, dropoffLatCell, dropoffLonCell);
+        }
     }
 
-    private double calculateVariance(double[] values) {
-        if (values.length == 0) return 0.0;
+    // Access-ordered LRU of pending or finished analyses. A miss computes outside the lock and
+    // concurrent misses on the same key wait for that one computation.
+    private static final class AnalysisCache {
+        private final LinkedHashMap<AnalysisKey, CompletableFuture<HistoricalAnalysis>> entries;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private AnalysisCache(int maxEntries) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<AnalysisKey, CompletableFuture<HistoricalAnalysis>> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private HistoricalAnalysis get(AnalysisKey key, Supplier<HistoricalAnalysis> compute) {
+            CompletableFuture<HistoricalAnalysis> fresh = new CompletableFuture<>();
+            CompletableFuture<HistoricalAnalysis> cached;
+            synchronized (entries) {
+                cached = entries.putIfAbsent(key, fresh);
+            }
+            if (cached != null) {
+                hits.increment();
+                try {
+                    return cached.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException cause) throw cause;
+                    throw e;
+                }
+            }
+
+            misses.increment();
+            try {
+                HistoricalAnalysis computed = compute.get();
+                fresh.complete(computed);
+                return computed;
+            } catch (RuntimeException e) {
+                synchronized (entries) {
+                    entries.remove(key, fresh);
+                }
+                fresh.completeExceptionally(e);
+                throw e;
+            }
+        }
 
-        double mean = Arrays.stream(values).average().orElse(0.0);
-        double sumSquaredDiff = Arrays.stream(values)
-                .map(v -> Math.pow(v - mean, 2))
-                .sum();
+        private void clear() {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
 
-        return sumSquaredDiff / values.length;
+        private Map<String, Long> stats() {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("hits", hits.sum());
+            stats.put("misses", misses.sum());
+            synchronized (entries) {
+                stats.put("size", (long) entries.size());
+            }
+            return stats;
+        }
     }
 
-    private Double parseCoordinate(String coord) {
-        if (coord == null || coord.isBlank()) return null;
-        try {
-            return Double.parseDouble(coord.trim());
-        } catch (NumberFormatException e) {
-            return null;
+    private static final class NearbyKey {
+        private final int cityId;
+        private final boolean pickup;
+        private final double lat;
+        private final double lon;
+
+        private NearbyKey(int cityId, boolean pickup, double lat, double lon) {
+            this.cityId = cityId;
+            this.pickup = pickup;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NearbyKey that)) return false;
+            return cityId == that.cityId && pickup == that.pickup && Double.compare(lat, that.lat) == 0 && Double.compare(lon, that.lon) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(cityId, pickup, lat, lon);
+        }
+    }
+
+    private static final class Evaluation {
+        private final double score;
+        private final String suggestion;
+
+        private Evaluation(double score, String suggestion) {
+            this.score = score;
+            this.suggestion = suggestion;
         }
     }
 
     private static class HistoricalAnalysis {
         double avgEarningsPerMinute = 0.0;
-        double avgSurgeThisHour = 1.0;
         double topPerformerEarningsPerMin = 0.0;
         double avgDistance = 0.0;
         double avgDuration = 0.0;
-        double nextHourSurge = 1.0;
-        double twoHoursLaterSurge = 1.0;
+        SurgeTable.Lookahead surgeOutlook;
 
         int nearbyPickupTripsCount = 0;
         double nearbyPickupAvgEarningsPerMinute = 0.0;
@@ -508,7 +761,6 @@ public class TripAnalysisService {
 
         int returnTripCount = 0;
         double returnTripAvgEarnings = 0.0;
-        double returnTripAvgSurge = 1.0;
         double returnTripQualityIndex = 0.0;
     }
 }
@@ -0,0 +1,343 @@
+package com.attentionseekers.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Parses rides_trips.csv and eats_orders.csv once into primitive column arrays shared by the
+ * demand and trip analysis services. Timestamps are stored as minutes since 1970-01-01T00:00
+ * of the local wall clock, so hour and weekday can be derived without creating date objects.
+ */
+@Component
+public class TripEventStore {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final ResourceLoader resourceLoader;
+    private final DataSnapshots snapshots;
+    private final DataSnapshot.Part<EnumMap<EventDataset, Columns>> columns;
+
+    public TripEventStore(ResourceLoader resourceLoader) {
+        this(new DataSnapshots(resourceLoader));
+    }
+
+    @Autowired
+    public TripEventStore(DataSnapshots snapshots) {
+        this.snapshots = snapshots;
+        this.resourceLoader = snapshots.resourceLoader();
+        EnumMap<EventDataset, Columns> loaded = new EnumMap<>(EventDataset.class);
+        for (EventDataset dataset : EventDataset.values()) {
+            loaded.put(dataset, load(resourceLoader, dataset.getLocation()));
+        }
+        this.columns = snapshots.register(loaded);
+    }
+
+    // Stages the columns of a store loaded off to the side.
+    void prepareReload(TripEventStore staged, DataSnapshot.Builder next) {
+        next.put(columns, staged.snapshots.current().get(staged.columns));
+    }
+
+    DataSnapshots snapshots() {
+        return snapshots;
+    }
+
+    public Columns columns(EventDataset dataset) {
+        return snapshots.current().get(columns).get(dataset);
+    }
+
+    public ResourceLoader getResourceLoader() {
+        return resourceLoader;
+    }
+
+    public List<Integer> cityIds() {
+        TreeSet<Integer> cities = new TreeSet<>();
+        for (Columns c : snapshots.current().get(columns).values()) {
+            for (int i = 0; i < c.size; i++) {
+                if (c.cityId[i] > 0) cities.add(c.cityId[i]);
+            }
+        }
+        return List.copyOf(cities);
+    }
+
+    public static int hourOf(int epochMinute) {
+        return Math.floorMod(epochMinute, MINUTES_PER_DAY) / 60;
+    }
+
+    // ISO day of week, Monday = 1; 1970-01-01 was a Thursday
+    public static int dayOfWeekOf(int epochMinute) {
+        return (int) Math.floorMod(Math.floorDiv(epochMinute, MINUTES_PER_DAY) + 3L, 7L) + 1;
+    }
+
+    public static int toEpochMinute(LocalDateTime dateTime) {
+        return (int) Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60L);
+    }
+
+    public static LocalDateTime toDateTime(int epochMinute) {
+        return LocalDateTime.ofEpochSecond(epochMinute * 60L, 0, ZoneOffset.UTC);
+    }
+
+    public static String hexToString(long hex) {
+        return hex == 0L ? "" : Long.toHexString(hex);
+    }
+
+    public static long parseHex(String raw) {
+        if (raw == null) return 0L;
+        String h = raw.trim();
+        if (h.isEmpty() || h.length() > 16) return 0L;
+        try {
+            return Long.parseUnsignedLong(h, 16);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private Columns load(ResourceLoader loader, String location) {
+        Resource resource = loader.getResource(location);
+        Columns c = new Columns(4096);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IllegalStateException("CSV " + location + " is empty");
+            }
+            String[] cols = header.split(",", -1);
+            int idIdx = findHeaderIndex(cols, 0, "ride_id", "order_id");
+            int earnerIdx = findHeaderIndex(cols, 1, "driver_id", "courier_id");
+            int customerIdx = findHeaderIndex(cols, 2, "rider_id", "customer_id");
+            int cityIdx = findHeaderIndex(cols, 3, "city_id");
+            int productIdx = findHeaderIndex(cols, -1, "product");
+            int vehicleIdx = findHeaderIndex(cols, -1, "vehicle_type");
+            int evIdx = findHeaderIndex(cols, -1, "is_ev");
+            int startIdx = findHeaderIndex(cols, 7, "start_time");
+            int endIdx = findHeaderIndex(cols, -1, "end_time");
+            int pickupLatIdx = findHeaderIndex(cols, -1, "pickup_lat");
+            int pickupLonIdx = findHeaderIndex(cols, -1, "pickup_lon");
+            int pickupHexIdx = findHeaderIndex(cols, -1, "pickup_hex_id9");
+            int dropLatIdx = findHeaderIndex(cols, -1, "drop_lat");
+            int dropLonIdx = findHeaderIndex(cols, -1, "drop_lon");
+            int dropHexIdx = findHeaderIndex(cols, -1, "drop_hex_id9");
+            int distanceIdx = findHeaderIndex(cols, -1, "distance_km");
+            int durationIdx = findHeaderIndex(cols, -1, "duration_mins");
+            int surgeIdx = findHeaderIndex(cols, -1, "surge_multiplier");
+            int fareIdx = findHeaderIndex(cols, -1, "fare_amount");
+            int feeIdx = findHeaderIndex(cols, -1, "uber_fee");
+            int netIdx = findHeaderIndex(cols, -1, "net_earnings");
+            int tipsIdx = findHeaderIndex(cols, -1, "tips", "tip_eur");
+            int paymentIdx = findHeaderIndex(cols, -1, "payment_type");
+
+            Map<String, String> dictionary = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String[] fields = line.split(",", -1);
+                if (fields.length <= 7) continue;
+                int cityId;
+                int start;
+                try {
+                    cityId = Integer.parseInt(safeGet(fields, cityIdx).trim());
+                    start = parseEpochMinute(safeGet(fields, startIdx));
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                int i = c.add();
+                c.cityId[i] = cityId;
+                c.startMinute[i] = start;
+                c.endMinute[i] = parseEpochMinuteOrDefault(safeGet(fields, endIdx), start);
+                c.pickupLat[i] = parseDouble(safeGet(fields, pickupLatIdx), 0.0);
+                c.pickupLon[i] = parseDouble(safeGet(fields, pickupLonIdx), 0.0);
+                c.pickupHex[i] = parseHex(safeGet(fields, pickupHexIdx));
+                c.dropLat[i] = parseDouble(safeGet(fields, dropLatIdx), 0.0);
+                c.dropLon[i] = parseDouble(safeGet(fields, dropLonIdx), 0.0);
+                c.dropHex[i] = parseHex(safeGet(fields, dropHexIdx));
+                c.distanceKm[i] = parseDouble(safeGet(fields, distanceIdx), 0.0);
+                c.durationMins[i] = (int) parseDouble(safeGet(fields, durationIdx), 0.0);
+                c.surge[i] = parseDouble(safeGet(fields, surgeIdx), 1.0);
+                c.fareAmount[i] = parseDouble(safeGet(fields, fareIdx), 0.0);
+                c.uberFee[i] = parseDouble(safeGet(fields, feeIdx), 0.0);
+                c.netEarnings[i] = parseDouble(safeGet(fields, netIdx), 0.0);
+                c.tips[i] = parseDouble(safeGet(fields, tipsIdx), 0.0);
+                c.isEv[i] = Boolean.parseBoolean(safeGet(fields, evIdx).trim());
+                c.eventId[i] = safeGet(fields, idIdx);
+                c.earnerId[i] = dictionary.computeIfAbsent(safeGet(fields, earnerIdx), v -> v);
+                c.customerId[i] = safeGet(fields, customerIdx);
+                c.product[i] = dictionary.computeIfAbsent(safeGet(fields, productIdx), v -> v);
+                c.vehicleType[i] = dictionary.computeIfAbsent(safeGet(fields, vehicleIdx), v -> v);
+                c.paymentType[i] = dictionary.computeIfAbsent(safeGet(fields, paymentIdx), v -> v);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load " + location, e);
+        }
+        c.trim();
+        return c;
+    }
+
+    // Fast path for "yyyy-MM-dd HH:mm[:ss]"; anything else is rejected.
+    static int parseEpochMinute(String raw) {
+        String s = raw.trim();
+        if (s.length() < 16 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(13) != ':') {
+            throw new IllegalArgumentException("Unsupported timestamp: " + raw);
+        }
+        int year = Integer.parseInt(s, 0, 4, 10);
+        int month = Integer.parseInt(s, 5, 7, 10);
+        int day = Integer.parseInt(s, 8, 10, 10);
+        int hour = Integer.parseInt(s, 11, 13, 10);
+        int minute = Integer.parseInt(s, 14, 16, 10);
+        if (hour > 23 || minute > 59) {
+            throw new IllegalArgumentException("Unsupported timestamp: " + raw);
+        }
+        long epochDay = LocalDate.of(year, month, day).toEpochDay();
+        return (int) (epochDay * MINUTES_PER_DAY + hour * 60L + minute);
+    }
+
+    private static int parseEpochMinuteOrDefault(String raw, int fallback) {
+        try {
+            return parseEpochMinute(raw);
+        } catch (RuntimeException e) {
+            return fallback;
+        }
+    }
+
+    static List<String[]> readRows(ResourceLoader loader, String location) {
+        Resource resource = loader.getResource(location);
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                rows.add(line.split(",", -1));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load " + location, e);
+        }
+        if (rows.isEmpty()) {
+            throw new IllegalStateException("CSV " + location + " is empty");
+        }
+        return rows;
+    }
+
+    static double parseDouble(String value, double fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    static String safeGet(String[] fields, int idx) {
+        if (idx < 0 || idx >= fields.length) return "";
+        return fields[idx];
+    }
+
+    static int findHeaderIndex(String[] cols, int fallback, String... names) {
+        for (String name : names) {
+            for (int i = 0; i < cols.length; i++) {
+                if (cols[i].trim().equalsIgnoreCase(name)) return i;
+            }
+        }
+        return fallback;
+    }
+
+    public static final class Columns {
+        private int size;
+
+        int[] cityId;
+        int[] startMinute;
+        int[] endMinute;
+        double[] pickupLat;
+        double[] pickupLon;
+        long[] pickupHex;
+        double[] dropLat;
+        double[] dropLon;
+        long[] dropHex;
+        double[] distanceKm;
+        int[] durationMins;
+        double[] surge;
+        double[] fareAmount;
+        double[] uberFee;
+        double[] netEarnings;
+        double[] tips;
+        boolean[] isEv;
+        String[] eventId;
+        String[] earnerId;
+        String[] customerId;
+        String[] product;
+        String[] vehicleType;
+        String[] paymentType;
+
+        Columns(int capacity) {
+            resize(capacity);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int hour(int row) {
+            return hourOf(startMinute[row]);
+        }
+
+        public int dayOfWeek(int row) {
+            return dayOfWeekOf(startMinute[row]);
+        }
+
+        public DemandBucket bucket(int row) {
+            return DemandBucket.fromHour(hour(row));
+        }
+
+        int add() {
+            if (size == cityId.length) {
+                resize(size * 2);
+            }
+            return size++;
+        }
+
+        void trim() {
+            if (size != cityId.length) {
+                resize(size);
+            }
+        }
+
+        private void resize(int n) {
+            cityId = cityId == null ? new int[n] : Arrays.copyOf(cityId, n);
+            startMinute = startMinute == null ? new int[n] : Arrays.copyOf(startMinute, n);
+            endMinute = endMinute == null ? new int[n] : Arrays.copyOf(endMinute, n);
+            pickupLat = pickupLat == null ? new double[n] : Arrays.copyOf(pickupLat, n);
+            pickupLon = pickupLon == null ? new double[n] : Arrays.copyOf(pickupLon, n);
+            pickupHex = pickupHex == null ? new long[n] : Arrays.copyOf(pickupHex, n);
+            dropLat = dropLat == null ? new double[n] : Arrays.copyOf(dropLat, n);
+            dropLon = dropLon == null ? new double[n] : Arrays.copyOf(dropLon, n);
+            dropHex = dropHex == null ? new long[n] : Arrays.copyOf(dropHex, n);
+            distanceKm = distanceKm == null ? new double[n] : Arrays.copyOf(distanceKm, n);
+            durationMins = durationMins == null ? new int[n] : Arrays.copyOf(durationMins, n);
+            surge = surge == null ? new double[n] : Arrays.copyOf(surge, n);
+            fareAmount = fareAmount == null ? new double[n] : Arrays.copyOf(fareAmount, n);
+            uberFee = uberFee == null ? new double[n] : Arrays.copyOf(uberFee, n);
+            netEarnings = netEarnings == null ? new double[n] : Arrays.copyOf(netEarnings, n);
+            tips = tips == null ? new double[n] : Arrays.copyOf(tips, n);
+            isEv = isEv == null ? new boolean[n] : Arrays.copyOf(isEv, n);
+            eventId = eventId == null ? new String[n] : Arrays.copyOf(eventId, n);
+            earnerId = earnerId == null ? new String[n] : Arrays.copyOf(earnerId, n);
+            customerId = customerId == null ? new String[n] : Arrays.copyOf(customerId, n);
+            product = product == null ? new String[n] : Arrays.copyOf(product, n);
+            vehicleType = vehicleType == null ? new String[n] : Arrays.copyOf(vehicleType, n);
+            paymentType = paymentType == null ? new String[n] : Arrays.copyOf(paymentType, n);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.attentionseekers.service;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Uniform lat/lon grid over one point per trip (pickup or drop). Radius queries visit only
+ * the cells overlapping the query's bounding box and run the exact distance test on their
+ * members, so their cost follows local density rather than the number of indexed trips.
+ */
+final class TripGridIndex {
+
+    private static final double CELL_DEGREES = 0.05;
+
+    // points reordered so each cell's members are contiguous; members[k] is the caller's index
+    private final double[] lat;
+    private final double[] lon;
+    private final double[] cosLat;
+    private final int[] members;
+    // CSR layout: positions cellStart[c] .. cellStart[c + 1] belong to cellKeys[c]
+    private final long[] cellKeys;
+    private final int[] cellStart;
+
+    TripGridIndex(double[] lat, double[] lon) {
+        int n = lat.length;
+        long[] keyOf = new long[n];
+        for (int i = 0; i < n; i++) {
+            keyOf[i] = cellKey(cell(lat[i]), cell(lon[i]));
+        }
+        long[] sortedKeys = keyOf.clone();
+        Arrays.sort(sortedKeys);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) sortedKeys[distinct++] = sortedKeys[i];
+        }
+        this.cellKeys = Arrays.copyOf(sortedKeys, distinct);
+        this.cellStart = new int[distinct + 1];
+        int[] cellOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = Arrays.binarySearch(cellKeys, keyOf[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < distinct; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        this.members = new int[n];
+        this.lat = new double[n];
+        this.lon = new double[n];
+        int[] fill = Arrays.copyOf(cellStart, distinct);
+        for (int i = 0; i < n; i++) {
+            int k = fill[cellOf[i]]++;
+            members[k] = i;
+            this.lat[k] = lat[i];
+            this.lon[k] = lon[i];
+        }
+        this.cosLat = GeoDistance.cosLatitudes(this.lat);
+    }
+
+    // Indices of points within radiusKm of (qLat, qLon), ascending.
+    int[] within(double qLat, double qLon, double radiusKm) {
+        IntStream.Builder matches = IntStream.builder();
+        forEachWithin(qLat, qLon, radiusKm, matches::add);
+        return matches.build().sorted().toArray();
+    }
+
+    // Index of the closest point within maxKm of (qLat, qLon), or -1.
+    int nearest(double qLat, double qLon, double maxKm) {
+        int[] best = {-1};
+        double[] bestKm = {Double.POSITIVE_INFINITY};
+        forEachPositionWithin(GeoDistance.radius(qLat, qLon, maxKm), k -> {
+            double km = GeoDistance.haversineKm(qLat, qLon, lat[k], lon[k]);
+            int i = members[k];
+            if (km < bestKm[0] || (km == bestKm[0] && i < best[0])) {
+                bestKm[0] = km;
+                best[0] = i;
+            }
+        });
+        return best[0];
+    }
+
+    // Same matches as within(), visited in cell order without collecting them.
+    void forEachWithin(double qLat, double qLon, double radiusKm, IntConsumer action) {
+        forEachPositionWithin(GeoDistance.radius(qLat, qLon, radiusKm), k -> action.accept(members[k]));
+    }
+
+    private void forEachPositionWithin(GeoDistance.Radius radius, IntConsumer action) {
+        if (radius.wrapsLongitude()) {
+            radius.forEachWithin(lat, lon, cosLat, 0, lat.length, action);
+            return;
+        }
+        for (long latCell = cell(radius.minLat()); latCell <= cell(radius.maxLat()); latCell++) {
+            for (long lonCell = cell(radius.minLon()); lonCell <= cell(radius.maxLon()); lonCell++) {
+                int c = Arrays.binarySearch(cellKeys, cellKey(latCell, lonCell));
+                if (c >= 0) radius.forEachWithin(lat, lon, cosLat, cellStart[c], cellStart[c + 1], action);
+            }
+        }
+    }
+
+    private static long cell(double degrees) {
+        return (long) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(long latCell, long lonCell) {
+        return (latCell << 32) | (lonCell & 0xFFFFFFFFL);
+    }
+}
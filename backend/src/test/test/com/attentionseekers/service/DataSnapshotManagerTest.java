@@ -0,0 +1,114 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.dto.TripEventRequest;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataSnapshotManagerTest {
+
+    @Test
+    public void reloadsWhenDirectoryChanges() throws Exception {
+        Path dir = Files.createTempDirectory("demand-data");
+        DataSnapshots snapshots = new DataSnapshots(dir.toString(), new DefaultResourceLoader());
+        TripEventStore store = new TripEventStore(snapshots);
+        DemandDataLoader demandLoader = new DemandDataLoader(store);
+        HexAggregatorService hexAggregator = new HexAggregatorService(store);
+        HistoricalTripDataLoader tripLoader = new HistoricalTripDataLoader(store);
+        DemandFeatureStore features = new DemandFeatureStore(snapshots);
+        DemandService demandService = new DemandService(demandLoader, hexAggregator, ZoneId.systemDefault());
+        // as the Spring-configured mapper does, so the "generator" key of rest_locations.json is ignored
+        RestLocationService restLocations = new RestLocationService(
+                new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false), snapshots);
+        DataSnapshotManager manager = new DataSnapshotManager(snapshots, store, demandLoader,
+                hexAggregator, tripLoader, features, restLocations, demandService, new TripAnalysisService(tripLoader));
+
+        assertEquals(0.97, features.surgeMultiplier(1, 0), 1e-9);
+        assertEquals(1L, manager.current().getVersion());
+
+        // a request that started before the reload keeps reading the snapshot it pinned
+        DataSnapshot before = snapshots.pin();
+        Files.writeString(dir.resolve("surge_by_hour.csv"), "city_id,hour,surge_multiplier\n1,0,1.5\n");
+        manager.checkForChanges();
+        assertEquals(2L, manager.current().getVersion());
+        assertSame(before, snapshots.current());
+        assertEquals(0.97, features.surgeMultiplier(1, 0), 1e-9);
+        assertEquals(0.97, tripLoader.getSurgeForCityAndHour(1, 0), 1e-9);
+        snapshots.unpin();
+
+        assertEquals(2L, snapshots.current().getVersion());
+        assertEquals(1.5, features.surgeMultiplier(1, 0), 1e-9);
+        assertEquals(1.5, tripLoader.getSurgeForCityAndHour(1, 0), 1e-9);
+
+        manager.checkForChanges();
+        assertEquals(2L, manager.current().getVersion());
+
+        // a broken file keeps the previous snapshot live
+        Files.writeString(dir.resolve("weather_daily.csv"), "");
+        manager.checkForChanges();
+        assertEquals(2L, manager.current().getVersion());
+        assertNotNull(manager.stats().get("lastError"));
+        assertEquals(1.5, features.surgeMultiplier(1, 0), 1e-9);
+    }
+
+    @Test
+    public void liveEventsSurviveReloads() throws Exception {
+        Path dir = Files.createTempDirectory("demand-data");
+        DataSnapshots snapshots = new DataSnapshots(dir.toString(), new DefaultResourceLoader());
+        TripEventStore store = new TripEventStore(snapshots);
+        DemandDataLoader demandLoader = new DemandDataLoader(store);
+        HexAggregatorService hexAggregator = new HexAggregatorService(store);
+        HistoricalTripDataLoader tripLoader = new HistoricalTripDataLoader(store);
+        DemandService demandService = new DemandService(demandLoader, hexAggregator, ZoneId.systemDefault());
+        RestLocationService restLocations = new RestLocationService(
+                new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false), snapshots);
+        DataSnapshotManager manager = new DataSnapshotManager(snapshots, store, demandLoader, hexAggregator,
+                tripLoader, new DemandFeatureStore(snapshots), restLocations, demandService, new TripAnalysisService(tripLoader));
+        DemandIngestionService ingestion = new DemandIngestionService(demandLoader, hexAggregator, demandService,
+                new RecentDemandTracker(Duration.ofMinutes(30), Clock.systemDefaultZone()));
+
+        // city 42 has no historical data: two events at 08:00, then one at 09:00 from a request
+        // pinned to the snapshot that a reload replaces underneath it
+        ingestion.ingest(EventDataset.RIDES, event(42, "2025-10-17 08:15:00"));
+        ingestion.ingest(EventDataset.RIDES, event(42, "2025-10-17 08:20:00"));
+        snapshots.pin();
+        Files.writeString(dir.resolve("surge_by_hour.csv"), "city_id,hour,surge_multiplier\n1,0,1.5\n");
+        manager.checkForChanges();
+        ingestion.ingest(EventDataset.RIDES, event(42, "2025-10-17 09:05:00"));
+        snapshots.unpin();
+
+        assertEquals(2L, manager.current().getVersion());
+        assertLiveCounts(demandLoader, hexAggregator);
+
+        // replaying onto a fresh rebuild does not count the events twice
+        Files.writeString(dir.resolve("surge_by_hour.csv"), "city_id,hour,surge_multiplier\n1,0,1.6\n");
+        manager.reload();
+        assertEquals(3L, manager.current().getVersion());
+        assertLiveCounts(demandLoader, hexAggregator);
+    }
+
+    private static void assertLiveCounts(DemandDataLoader loader, HexAggregatorService hexAggregator) {
+        assertEquals(1.0, loader.ridesSignalForCityAt(LocalDateTime.of(2025, 10, 17, 8, 0), 42));
+        assertEquals(0.5, loader.ridesSignalForCityAt(LocalDateTime.of(2025, 10, 17, 9, 0), 42));
+        assertEquals(1.0, loader.ridesFor(DemandBucket.MORNING, 42).get("C").doubleValue());
+        assertEquals(1.0, hexAggregator.zoneRidesSignal(DemandBucket.MORNING, 42, loader).get("C").doubleValue());
+    }
+
+    private static TripEventRequest event(int cityId, String startTime) {
+        TripEventRequest e = new TripEventRequest();
+        e.setCityId(cityId);
+        e.setStartTime(startTime);
+        e.setPickupHexId9("89b5443252677be");
+        return e;
+    }
+}
@@ -51,4 +51,32 @@ public class DemandCalculatorTest {
         assertNotNull(out);
         assertTrue(out.isEmpty());
     }
+
+    @Test
+    public void arrayVariantMatchesMapVariant() {
+        Map<String, Double> rides = Map.of("A", 0.8, "B", 0.2, "C", 0.5);
+        Map<String, Double> eats  = Map.of("A", 0.1, "B", 0.9);
+        Map<String, Double> surge = Map.of("C", 1.0);
+        Map<String, Double> c     = Map.of("A", 0.4);
+
+        Map<String, DemandCalculator.ZoneDemand> expected = DemandCalculator.calculateDemand(rides, eats, surge, null, null, null, c, DemandCalculator.UserType.FOOD);
+
+        double[] r = {0.8, 0.2, 0.5};
+        double[] e = {0.1, 0.9, 0.0};
+        double[] s = {0.0, 0.0, 1.0};
+        double[] cancel = {0.4, 0.0, 0.0};
+        DemandCalculator.Scores scores = new DemandCalculator.Scores(1);
+        DemandCalculator.calculateDemand(3, r, e, s, null, null, null, cancel, DemandCalculator.UserType.FOOD, scores);
+
+        assertEquals(3, scores.size());
+        String[] zones = {"A", "B", "C"};
+        for (int z = 0; z < zones.length; z++) {
+            DemandCalculator.ZoneDemand zd = expected.get(zones[z]);
+            assertEquals(zd.getRidesScore(), scores.ridesScore(z));
+            assertEquals(zd.getEatsScore(), scores.eatsScore(z));
+            assertEquals(zd.getRidesLevel(), scores.ridesLevel(z).getLabel());
+            assertEquals(zd.getEatsLevel(), scores.eatsLevel(z).getLabel());
+            assertEquals(zd.getRecommendation(), scores.recommendation(z));
+        }
+    }
 }
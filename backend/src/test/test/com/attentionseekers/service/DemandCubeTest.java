@@ -0,0 +1,40 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DemandCubeTest {
+
+    @Test
+    public void cubeMatchesFullScan() {
+        TripEventStore store = new TripEventStore(new DefaultResourceLoader());
+        DemandCube cube = new DemandCube(store);
+
+        for (EventDataset dataset : EventDataset.values()) {
+            TripEventStore.Columns c = store.columns(dataset);
+            for (int city : store.cityIds()) {
+                for (int dow = 1; dow <= 7; dow++) {
+                    int max = 0;
+                    for (int hour = 0; hour < 24; hour++) {
+                        int expected = 0;
+                        for (int i = 0; i < c.size(); i++) {
+                            if (c.cityId[i] == city && c.dayOfWeek(i) == dow && c.hour(i) == hour) expected++;
+                        }
+                        assertEquals(expected, cube.count(dataset, city, dow, hour));
+                        max = Math.max(max, expected);
+                    }
+                    assertEquals(max, cube.maxForWeekday(dataset, city, dow));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unknownCityHasNoDemand() {
+        DemandCube cube = new DemandCube(new TripEventStore(new DefaultResourceLoader()));
+        assertEquals(0, cube.count(EventDataset.RIDES, 999, 1, 8));
+        assertEquals(0, cube.maxForWeekday(EventDataset.EATS, -1, 1));
+    }
+}
@@ -0,0 +1,44 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DemandFeatureStoreTest {
+
+    private final DemandFeatureStore store = new DemandFeatureStore(new DefaultResourceLoader());
+
+    @Test
+    public void loadsTablesFromCsv() {
+        // surge_by_hour.csv: 1,0,0.97
+        assertEquals(0.97, store.surgeMultiplier(1, 0), 1e-9);
+        // cancellation_rates.csv: 1,89006b0cd89bafa,1,3.19
+        assertEquals(0.0319, store.hexCancellation(TripEventStore.parseHex("89006b0cd89bafa")), 1e-9);
+        double heat = store.hexHeat(TripEventStore.parseHex("89006b0cd89bafa"));
+        assertTrue(heat > 0.0 && heat <= 1.0);
+        // weather_daily.csv: 2023-01-01,2,rain
+        assertEquals(1.15, store.weatherFactor(2, (int) LocalDate.of(2023, 1, 1).toEpochDay()), 1e-9);
+    }
+
+    @Test
+    public void fillsZoneAndCityVectors() {
+        int epochMinute = TripEventStore.toEpochMinute(LocalDateTime.of(2023, 1, 10, 18, 0));
+        DemandFeatureStore.Features f = new DemandFeatureStore.Features(store.zoneCount());
+        store.fillZones(1, epochMinute, f);
+        for (int z = 0; z < store.zoneCount(); z++) {
+            assertTrue(f.heat[z] > 0.0 && f.heat[z] <= 1.0);
+            assertTrue(f.cancellation[z] > 0.0 && f.cancellation[z] < 1.0);
+            assertTrue(f.incentives[z] >= 0.0 && f.incentives[z] <= 1.0);
+            assertTrue(f.weather[z] >= 1.0);
+        }
+
+        store.fillCity(99, epochMinute, f, 0);
+        assertEquals(0.0, f.heat[0]);
+        assertEquals(1.0, f.weather[0]);
+        assertEquals(0.0, f.surge[0]);
+    }
+}
@@ -0,0 +1,103 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.dto.TripEventRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DemandIngestionServiceTest {
+
+    @Test
+    public void ingestedEventsUpdateCityCounters() {
+        TripEventStore store = new TripEventStore(new DefaultResourceLoader());
+        DemandDataLoader loader = new DemandDataLoader(store);
+        HexAggregatorService hexAggregator = new HexAggregatorService(store);
+        Clock clock = Clock.fixed(Instant.parse("2025-10-17T08:20:00Z"), ZoneOffset.UTC);
+        RecentDemandTracker recent = new RecentDemandTracker(Duration.ofMinutes(30), clock);
+        DemandService demandService = new DemandService(loader, hexAggregator, recent,
+                new DemandFeatureStore(store.getResourceLoader()), clock);
+        DemandIngestionService ingestion = new DemandIngestionService(loader, hexAggregator, demandService, recent);
+
+        // city 42 has no historical data, so one event makes it the busiest hour of that weekday
+        LocalDateTime at = LocalDateTime.of(2025, 10, 17, 8, 0);
+        assertEquals(0.0, loader.ridesSignalForCityAt(at, 42));
+
+        Map<String, Long> result = ingestion.ingestAll(EventDataset.RIDES, List.of(
+                event(42, "2025-10-17 08:15:00", "89b5443252677be"),
+                event(null, "2025-10-17 08:15:00", "89b5443252677be"),
+                event(42, "not a time", null)
+        ));
+
+        assertEquals(1L, result.get("accepted").longValue());
+        assertEquals(2L, result.get("rejected").longValue());
+        assertEquals(1.0, loader.ridesSignalForCityAt(at, 42));
+        assertEquals(0.0, loader.eatsSignalForCityAt(at, 42));
+        assertEquals(1.0, loader.ridesFor(DemandBucket.MORNING, 42).get("C").doubleValue());
+        assertEquals(1.0, hexAggregator.zoneRidesSignal(DemandBucket.MORNING, 42, loader).get("C").doubleValue());
+        assertEquals("high", demandService.getRecentDemand(UserType.RIDER, 42).getZones().get("C").getRidesLevel());
+        assertEquals("low", demandService.getRecentDemand(UserType.RIDER, 42).getZones().get("A").getRidesLevel());
+    }
+
+    @Test
+    public void cachedResponsesPickUpEventsIngestedRightAfterThem() {
+        TripEventStore store = new TripEventStore(new DefaultResourceLoader());
+        DemandDataLoader loader = new DemandDataLoader(store);
+        HexAggregatorService hexAggregator = new HexAggregatorService(store);
+        Clock clock = Clock.fixed(Instant.parse("2025-10-17T09:10:00Z"), ZoneOffset.UTC);
+        RecentDemandTracker recent = new RecentDemandTracker(Duration.ofMinutes(30), clock);
+        DemandService demandService = new DemandService(loader, hexAggregator, recent,
+                new DemandFeatureStore(store.getResourceLoader()), clock);
+        DemandIngestionService ingestion = new DemandIngestionService(loader, hexAggregator, demandService, recent);
+
+        // both reads fall well inside one second and one cache hour
+        ingestion.ingest(EventDataset.RIDES, event(42, "2025-10-17 08:15:00", null));
+        double before = demandService.getCurrentDemand(UserType.RIDER, 42).getZones().get("42").getRidesScore();
+        ingestion.ingest(EventDataset.RIDES, event(42, "2025-10-17 09:05:00", null));
+        double after = demandService.getCurrentDemand(UserType.RIDER, 42).getZones().get("42").getRidesScore();
+
+        assertEquals(1.0, loader.ridesSignalForCityAt(LocalDateTime.of(2025, 10, 17, 9, 0), 42));
+        assertTrue(after > before, before + " -> " + after);
+    }
+
+    @Test
+    public void eventsOnlyInvalidateTheirOwnCity() {
+        TripEventStore store = new TripEventStore(new DefaultResourceLoader());
+        DemandDataLoader loader = new DemandDataLoader(store);
+        HexAggregatorService hexAggregator = new HexAggregatorService(store);
+        Clock clock = Clock.fixed(Instant.parse("2025-10-17T09:10:00Z"), ZoneOffset.UTC);
+        RecentDemandTracker recent = new RecentDemandTracker(Duration.ofMinutes(30), clock);
+        DemandService demandService = new DemandService(loader, hexAggregator, recent,
+                new DemandFeatureStore(store.getResourceLoader()), clock);
+        DemandIngestionService ingestion = new DemandIngestionService(loader, hexAggregator, demandService, recent);
+
+        demandService.getCurrentDemand(UserType.RIDER, 1);
+        demandService.getCurrentDemand(UserType.RIDER, -1);
+        ingestion.ingestAll(EventDataset.RIDES, List.of(
+                event(2, "2025-10-17 09:05:00", null),
+                event(2, "2025-10-17 09:06:00", null)));
+
+        demandService.getCurrentDemand(UserType.RIDER, 1);
+        assertEquals(1L, demandService.cacheStats().get("hits").longValue());
+        // the all-city response covers city 2 as well
+        demandService.getCurrentDemand(UserType.RIDER, -1);
+        assertEquals(1L, demandService.cacheStats().get("hits").longValue());
+        assertEquals(3L, demandService.cacheStats().get("misses").longValue());
+    }
+
+    private static TripEventRequest event(Integer cityId, String startTime, String hex) {
+        TripEventRequest e = new TripEventRequest();
+        e.setCityId(cityId);
+        e.setStartTime(startTime);
+        e.setPickupHexId9(hex);
+        return e;
+    }
+}
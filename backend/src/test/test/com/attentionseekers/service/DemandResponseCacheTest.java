@@ -0,0 +1,93 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.dto.DemandResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DemandResponseCacheTest {
+
+    private static final DemandResponseCache.Key KEY = new DemandResponseCache.Key(1L, DemandBucket.MORNING, "now", UserType.RIDER, -1);
+
+    @Test
+    public void entriesExpireAtTheGivenInstant() {
+        DemandResponseCache cache = new DemandResponseCache(8);
+        AtomicInteger loads = new AtomicInteger();
+
+        DemandResponse first = cache.get(KEY, 0L, 0, 1000, () -> response(loads));
+        assertSame(first, cache.get(KEY, 0L, 999, 2000, () -> response(loads)));
+        assertNotSame(first, cache.get(KEY, 0L, 1000, 2000, () -> response(loads)));
+
+        assertEquals(2, loads.get());
+        Map<String, Long> stats = cache.stats();
+        assertEquals(1L, stats.get("hits").longValue());
+        assertEquals(2L, stats.get("misses").longValue());
+        assertEquals(1L, stats.get("evictions").longValue());
+    }
+
+    @Test
+    public void entriesFromAnOlderGenerationAreRecomputed() {
+        DemandResponseCache cache = new DemandResponseCache(8);
+        AtomicInteger loads = new AtomicInteger();
+
+        DemandResponse first = cache.get(KEY, 1L, 0, 1000, () -> response(loads));
+        assertSame(first, cache.get(KEY, 1L, 10, 1000, () -> response(loads)));
+        DemandResponse second = cache.get(KEY, 2L, 20, 1000, () -> response(loads));
+        assertNotSame(first, second);
+        assertSame(second, cache.get(KEY, 2L, 30, 1000, () -> response(loads)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        DemandResponseCache cache = new DemandResponseCache(8);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = pool.submit(() -> cache.get(KEY, 0L, 0, 1000, () -> {
+                    try {
+                        release.await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return response(loads);
+                }));
+            }
+            release.countDown();
+            for (Future<?> f : futures) {
+                assertNotNull(f.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        DemandResponseCache cache = new DemandResponseCache(2);
+        AtomicInteger loads = new AtomicInteger();
+        for (int city = 1; city <= 5; city++) {
+            cache.get(new DemandResponseCache.Key(1L, DemandBucket.NIGHT, "now", UserType.FOOD, city), 0L, 0, 1000, () -> response(loads));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(3L, cache.stats().get("evictions").longValue());
+    }
+
+    private static DemandResponse response(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new DemandResponse(Instant.now(), "now", Map.of());
+    }
+}
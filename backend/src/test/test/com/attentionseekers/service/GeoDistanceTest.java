@@ -0,0 +1,56 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.model.RestLocation;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeoDistanceTest {
+
+    @Test
+    public void radiusTestAgreesWithTheFormulaAwayFromTheBoundary() {
+        Random random = new Random(5);
+        for (int q = 0; q < 200; q++) {
+            double qLat = random.nextDouble() * 178 - 89;
+            double qLon = random.nextDouble() * 360 - 180;
+            double radiusKm = 0.1 + random.nextDouble() * 50;
+            GeoDistance.Radius radius = GeoDistance.radius(qLat, qLon, radiusKm);
+            for (int p = 0; p < 200; p++) {
+                double pLat = Math.max(-90, Math.min(90, qLat + (random.nextDouble() - 0.5) * radiusKm / 50));
+                double pLon = qLon + (random.nextDouble() - 0.5) * radiusKm / 20;
+                if (pLon > 180) pLon -= 360;
+                if (pLon < -180) pLon += 360;
+                double km = GeoDistance.haversineKm(qLat, qLon, pLat, pLon);
+                if (Math.abs(km - radiusKm) < 1e-9) continue;
+                assertEquals(km <= radiusKm, radius.contains(pLat, pLon), qLat + "," + qLon + " -> " + pLat + "," + pLon);
+            }
+        }
+    }
+
+    @Test
+    public void findClosestMatchesAFullSort() throws Exception {
+        RestLocationService service = new RestLocationService(
+                new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+        List<RestLocation> all = service.getAllLocations();
+        assertFalse(all.isEmpty());
+
+        for (int limit : new int[]{1, 10, 200, RestLocationService.MAX_PAGE_SIZE}) {
+            List<RestLocation> expected = all.stream()
+                    .sorted(Comparator.comparingDouble(l -> GeoDistance.haversineKm(52.09, 5.12, l.getLatitude(), l.getLongitude())))
+                    .limit(limit)
+                    .toList();
+            assertEquals(expected.stream().map(RestLocation::getId).toList(),
+                    service.findClosest(52.09, 5.12, limit).stream().map(RestLocation::getId).toList());
+        }
+        assertThrows(IllegalArgumentException.class, () -> service.findClosest(52.09, 5.12, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.findClosest(52.09, 5.12, RestLocationService.MAX_PAGE_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> service.findClosest(91.0, 5.12, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.findClosest(52.09, Double.NaN, 10));
+    }
+}
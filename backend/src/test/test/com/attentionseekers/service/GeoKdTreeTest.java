@@ -0,0 +1,93 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeoKdTreeTest {
+
+    @Test
+    public void nearestMatchesFullSort() {
+        Random random = new Random(11);
+        int n = 3000;
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            // half clustered around Utrecht, half anywhere, plus some exact duplicates
+            if (i % 10 == 0 && i > 0) {
+                lat[i] = lat[i - 1];
+                lon[i] = lon[i - 1];
+            } else if (i % 2 == 0) {
+                lat[i] = 52.0 + random.nextDouble() * 0.2;
+                lon[i] = 5.0 + random.nextDouble() * 0.2;
+            } else {
+                lat[i] = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+                lon[i] = random.nextDouble() * 360 - 180;
+            }
+        }
+        GeoKdTree tree = new GeoKdTree(lat, lon);
+
+        double[][] queries = {{52.09, 5.12}, {0.0, 179.99}, {0.0, -180.0}, {89.9, 0.0}, {-90.0, 45.0}};
+        for (double[] q : queries) {
+            int[] expected = IntStream.range(0, n).boxed()
+                    .sorted(Comparator.comparingDouble((Integer i) -> GeoDistance.haversineKm(q[0], q[1], lat[i], lon[i]))
+                            .thenComparingInt(i -> i))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            for (int k : new int[]{0, 1, 7, 50, n, n + 5}) {
+                assertArrayEquals(Arrays.copyOf(expected, Math.min(k, n)), tree.nearest(q[0], q[1], k));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> tree.nearest(0.0, 0.0, -1));
+    }
+
+    @Test
+    public void rangeQueriesMatchFullScan() {
+        Random random = new Random(5);
+        int n = 2000;
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = i % 2 == 0 ? 52.0 + random.nextDouble() * 0.3 : random.nextDouble() * 20 - 10;
+            lon[i] = i % 2 == 0 ? 5.0 + random.nextDouble() * 0.3 : (i % 3 == 0 ? 170 + random.nextDouble() * 10 : -180 + random.nextDouble() * 10);
+        }
+        GeoKdTree tree = new GeoKdTree(lat, lon);
+
+        for (double km : new double[]{0.5, 3.0, 40.0, 900.0}) {
+            int[] expected = IntStream.range(0, n)
+                    .filter(i -> GeoDistance.haversineKm(52.1, 5.1, lat[i], lon[i]) <= km * (1 - 1e-9))
+                    .toArray();
+            IntStream.Builder found = IntStream.builder();
+            tree.forEachWithin(52.1, 5.1, km, found::add);
+            int[] actual = found.build().sorted().toArray();
+            // points right on the boundary may go either way
+            for (int i : expected) assertTrue(Arrays.binarySearch(actual, i) >= 0);
+            for (int i : actual) assertTrue(GeoDistance.haversineKm(52.1, 5.1, lat[i], lon[i]) <= km * (1 + 1e-9));
+        }
+
+        double[][] boxes = {{52.05, 5.05, 52.2, 5.2}, {-5.0, 175.0, 5.0, -175.0}, {-10.0, -180.0, 10.0, 180.0}};
+        for (double[] box : boxes) {
+            boolean wraps = box[1] > box[3];
+            int[] expected = IntStream.range(0, n)
+                    .filter(i -> lat[i] >= box[0] && lat[i] <= box[2]
+                            && (wraps ? lon[i] >= box[1] || lon[i] <= box[3] : lon[i] >= box[1] && lon[i] <= box[3]))
+                    .toArray();
+            IntStream.Builder found = IntStream.builder();
+            tree.forEachInBox(box[0], box[1], box[2], box[3], found::add);
+            assertTrue(expected.length > 0);
+            assertArrayEquals(expected, found.build().sorted().toArray());
+        }
+    }
+
+    @Test
+    public void emptyTreeReturnsNothing() {
+        GeoKdTree tree = new GeoKdTree(new double[0], new double[0]);
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.nearest(52.0, 5.0, 10).length);
+    }
+}
@@ -0,0 +1,170 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistoricalTripDataLoaderTest {
+
+    @Test
+    public void baselinesMatchFullScan() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+
+        for (int hour = 0; hour < 24; hour++) {
+            int h = hour;
+            List<HistoricalTripDataLoader.TripRecord> trips = loader.getAllTrips().stream()
+                    .filter(t -> t.startTime.getHour() == h && t.durationMins > 0)
+                    .toList();
+            HistoricalTripDataLoader.BaselineStats baseline = loader.getBaselineForHour(hour);
+            assertEquals(trips.size(), baseline.tripCount);
+            if (trips.isEmpty()) continue;
+
+            assertEquals(trips.stream().mapToDouble(t -> t.netEarnings / t.durationMins).average().orElse(0.0),
+                    baseline.avgEarningsPerMinute);
+            assertEquals(trips.stream().mapToDouble(t -> t.surgeMultiplier).average().orElse(1.0), baseline.avgSurge);
+            assertEquals(trips.stream().mapToDouble(t -> t.durationMins).average().orElse(0.0), baseline.avgDurationMins);
+
+            List<Double> sorted = trips.stream().map(t -> t.netEarnings / t.durationMins).sorted().toList();
+            assertEquals(sorted.get(Math.min((int) (sorted.size() * 0.75), sorted.size() - 1)).doubleValue(), baseline.p75EarningsPerMinute);
+            assertTrue(baseline.p25EarningsPerMinute <= baseline.p50EarningsPerMinute);
+            assertTrue(baseline.p75EarningsPerMinute <= baseline.p90EarningsPerMinute);
+        }
+    }
+
+    @Test
+    public void cityBaselinesCoverOnlyThatCity() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        HistoricalTripDataLoader.TripRecord first = loader.getAllTrips().get(0);
+        int hour = first.startTime.getHour();
+
+        assertEquals(loader.getTripsForCityAndHour(first.cityId, hour).stream().filter(t -> t.durationMins > 0).count(),
+                loader.getBaselineForCityAndHour(first.cityId, hour).tripCount);
+        assertEquals(0, loader.getBaselineForCityAndHour(-7, hour).tripCount);
+    }
+
+    @Test
+    public void radiusLookupsMatchFullScan() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        HistoricalTripDataLoader.TripRecord probe = loader.getAllTrips().get(0);
+        int hour = probe.startTime.getHour();
+
+        List<HistoricalTripDataLoader.TripRecord> pickups = loader.getTripsForHour(hour).stream()
+                .filter(t -> GeoDistance.haversineKm(probe.pickupLat, probe.pickupLon, t.pickupLat, t.pickupLon) <= 5.0)
+                .toList();
+        List<HistoricalTripDataLoader.TripRecord> drops = loader.getTripsForHour(hour).stream()
+                .filter(t -> GeoDistance.haversineKm(probe.dropLat, probe.dropLon, t.dropLat, t.dropLon) <= 5.0)
+                .toList();
+
+        assertFalse(pickups.isEmpty());
+        assertEquals(rideIds(pickups), rideIds(loader.getTripsWithPickupNear(hour, probe.pickupLat, probe.pickupLon, 5.0)));
+        assertEquals(rideIds(drops), rideIds(loader.getTripsWithDropNear(hour, probe.dropLat, probe.dropLon, 5.0)));
+    }
+
+    @Test
+    public void cityAggregatesMatchFullScanOfThatCity() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        HistoricalTripDataLoader.TripRecord probe = loader.getAllTrips().get(0);
+        int hour = probe.startTime.getHour();
+
+        List<HistoricalTripDataLoader.TripRecord> pickups = loader.getTripsForCityAndHour(probe.cityId, hour).stream()
+                .filter(t -> GeoDistance.haversineKm(probe.pickupLat, probe.pickupLon, t.pickupLat, t.pickupLon) <= 5.0)
+                .toList();
+        TripAggregate aggregate = loader.aggregatePickupsNear(probe.cityId, hour, probe.pickupLat, probe.pickupLon, 5.0,
+                new TripAggregate().reset(0.0));
+
+        assertFalse(pickups.isEmpty());
+        assertEquals(pickups.size(), aggregate.count());
+        assertEquals(pickups.stream().mapToDouble(t -> t.surgeMultiplier).sum() / pickups.size(), aggregate.meanSurge(), 1e-9);
+        assertEquals(0, loader.aggregateDropsNear(-7, hour, probe.dropLat, probe.dropLon, 5.0,
+                new TripAggregate().reset(0.0)).count());
+    }
+
+    @Test
+    public void cityNearFindsTheCityOfTheClosestTrip() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        HistoricalTripDataLoader.TripRecord trip = loader.getAllTrips().stream()
+                .filter(t -> t.pickupHexId != null)
+                .findFirst().orElseThrow();
+
+        assertEquals(trip.cityId, loader.cityNear(trip.pickupLat, trip.pickupLon, 1.0));
+        assertEquals(0, loader.cityNear(0.0, 0.0, 15.0));
+    }
+
+    @Test
+    public void pickupHexesNearAreTheDistinctHexesOfTheRadiusLookup() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        HistoricalTripDataLoader.TripRecord probe = loader.getAllTrips().stream()
+                .filter(t -> t.pickupHexId != null)
+                .findFirst().orElseThrow();
+        int hour = probe.startTime.getHour();
+
+        long[] expected = loader.getTripsWithPickupNear(hour, probe.pickupLat, probe.pickupLon, 5.0).stream()
+                .filter(t -> t.cityId == probe.cityId && t.pickupHexId != null)
+                .mapToLong(t -> TripEventStore.parseHex(t.pickupHexId))
+                .distinct().sorted().toArray();
+        assertTrue(expected.length > 0);
+        assertArrayEquals(expected, loader.pickupHexesNear(probe.cityId, hour, probe.pickupLat, probe.pickupLon, 5.0));
+        assertEquals(0, loader.pickupHexesNear(-7, hour, probe.pickupLat, probe.pickupLon, 5.0).length);
+    }
+
+    @Test
+    public void tripViewsReadThroughToTheRideColumns() {
+        TripEventStore store = new TripEventStore(new DefaultResourceLoader());
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(store);
+        TripEventStore.Columns c = store.columns(EventDataset.RIDES);
+
+        List<HistoricalTripDataLoader.TripRecord> all = loader.getAllTrips();
+        assertEquals(c.size(), all.size());
+        int last = c.size() - 1;
+        HistoricalTripDataLoader.TripRecord trip = all.get(last);
+        assertEquals(c.eventId[last], trip.rideId);
+        assertEquals(TripEventStore.toDateTime(c.startMinute[last]), trip.startTime);
+        assertEquals(TripEventStore.hexToString(c.dropHex[last]), trip.dropHexId);
+        assertEquals(c.netEarnings[last], trip.netEarnings);
+        assertThrows(IndexOutOfBoundsException.class, () -> all.get(c.size()));
+        assertThrows(UnsupportedOperationException.class, () -> all.set(0, trip));
+
+        // records are detached copies
+        double earnings = c.netEarnings[last];
+        trip.netEarnings = -1.0;
+        assertEquals(earnings, c.netEarnings[last]);
+        assertEquals(earnings, all.get(last).netEarnings);
+
+        int hour = trip.startTime.getHour();
+        assertTrue(rideIds(loader.getTripsForCityAndHour(trip.cityId, hour)).contains(trip.rideId));
+        assertTrue(rideIds(loader.getTripsForHour(hour)).contains(trip.rideId));
+    }
+
+    @Test
+    public void tripsWithoutADurationStayOutOfTheHourlyBaselines() throws Exception {
+        Path dir = Files.createTempDirectory("trip-data");
+        Files.writeString(dir.resolve("rides_trips.csv"), String.join("\n",
+                "ride_id,city_id,start_time,pickup_lat,pickup_lon,pickup_hex_id9,drop_lat,drop_lon,drop_hex_id9,"
+                        + "distance_km,duration_mins,surge_multiplier,net_earnings",
+                "r1,3,2023-01-13 23:50:00,52.09319,5.17695,89b5443252677be,52.08017,5.16125,896326c3e14b5c2,9,20,1.2,13.0",
+                "r2,3,2023-01-13 23:55:00,52.09319,5.17695,89b5443252677be,52.08017,5.16125,896326c3e14b5c2,0,0,1.0,4.0",
+                ""));
+        TripEventStore store = new TripEventStore(new DataSnapshots(dir.toString(), new DefaultResourceLoader()));
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(store);
+
+        assertEquals(2, loader.getAllTrips().size());
+        HistoricalTripDataLoader.BaselineStats baseline = loader.getBaselineForHour(23);
+        assertEquals(1, baseline.tripCount);
+        assertEquals(13.0 / 20, baseline.avgEarningsPerMinute, 1e-9);
+        assertEquals(1, loader.getBaselineForCityAndHour(3, 23).tripCount);
+        // the lists still return every trip; only the aggregates leave it out
+        assertEquals(List.of("r1", "r2"), rideIds(loader.getTripsForHour(23)));
+        assertEquals(List.of("r1", "r2"), rideIds(loader.getTripsForCityAndHour(3, 23)));
+        assertEquals(List.of("r1", "r2"), rideIds(loader.getTripsWithPickupNear(23, 52.09319, 5.17695, 1.0)));
+        assertEquals(1, loader.aggregatePickupsNear(23, 52.09319, 5.17695, 1.0, new TripAggregate()).count());
+    }
+
+    private static List<String> rideIds(List<HistoricalTripDataLoader.TripRecord> trips) {
+        return trips.stream().map(t -> t.rideId).toList();
+    }
+}
@@ -0,0 +1,84 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OriginDestinationMatrixTest {
+
+    @Test
+    public void cellsMatchFullScan() {
+        TripEventStore store = new TripEventStore(new DefaultResourceLoader());
+        TripEventStore.Columns c = store.columns(EventDataset.RIDES);
+        OriginDestinationMatrix od = new OriginDestinationMatrix(c);
+        assertTrue(od.entryCount() > 0);
+
+        for (int probe = 0; probe < Math.min(c.size(), 25); probe++) {
+            if (c.pickupHex[probe] == 0L || c.dropHex[probe] == 0L || c.durationMins[probe] <= 0) continue;
+            int hour = c.hour(probe);
+            long origin = c.pickupHex[probe];
+            long dest = c.dropHex[probe];
+
+            int pairCount = 0;
+            double pairEpm = 0.0;
+            double pairDuration = 0.0;
+            int outCount = 0;
+            double outEpm = 0.0;
+            for (int i = 0; i < c.size(); i++) {
+                if (c.hour(i) != hour || c.pickupHex[i] != origin || c.dropHex[i] == 0L || c.durationMins[i] <= 0) continue;
+                double epm = c.netEarnings[i] / c.durationMins[i];
+                outCount++;
+                outEpm += epm;
+                if (c.dropHex[i] == dest) {
+                    pairCount++;
+                    pairEpm += epm;
+                    pairDuration += c.durationMins[i];
+                }
+            }
+
+            assertEquals(pairCount, od.tripCount(hour, origin, dest));
+            assertEquals(pairEpm / pairCount, od.meanEarningsPerMinute(hour, origin, dest), 1e-9);
+            assertEquals(pairDuration / pairCount, od.meanDurationMins(hour, origin, dest), 1e-9);
+            assertEquals(outCount, od.outboundTrips(hour, origin));
+            assertEquals(outEpm / outCount, od.outboundEarningsPerMinute(hour, origin), 1e-9);
+            assertTrue(od.outboundQuality(hour, origin) > 0.0);
+        }
+    }
+
+    @Test
+    public void severalOriginsAddUpTheirRows() {
+        TripEventStore.Columns c = new TripEventStore(new DefaultResourceLoader()).columns(EventDataset.RIDES);
+        OriginDestinationMatrix od = new OriginDestinationMatrix(c);
+        int hour = -1;
+        long a = 0L;
+        long b = 0L;
+        for (int i = 0; i < c.size() && b == 0L; i++) {
+            if (c.pickupHex[i] == 0L || c.dropHex[i] == 0L || c.durationMins[i] <= 0) continue;
+            if (hour < 0) {
+                hour = c.hour(i);
+                a = c.pickupHex[i];
+            } else if (c.hour(i) == hour && c.pickupHex[i] != a) {
+                b = c.pickupHex[i];
+            }
+        }
+        assertNotEquals(0L, b);
+
+        int trips = od.outboundTrips(hour, a) + od.outboundTrips(hour, b);
+        double earnings = od.outboundEarningsPerMinute(hour, a) * od.outboundTrips(hour, a)
+                + od.outboundEarningsPerMinute(hour, b) * od.outboundTrips(hour, b);
+        assertEquals(trips, od.outboundTrips(hour, new long[]{a, b}));
+        assertEquals(earnings / trips, od.outboundEarningsPerMinute(hour, new long[]{a, b}), 1e-9);
+        assertEquals(od.outboundQuality(hour, a), od.outboundQuality(hour, new long[]{a, 42L}), 1e-9);
+        assertEquals(0.0, od.outboundQuality(hour, new long[0]));
+    }
+
+    @Test
+    public void unknownHexesReadAsEmpty() {
+        OriginDestinationMatrix od = new OriginDestinationMatrix(
+                new TripEventStore(new DefaultResourceLoader()).columns(EventDataset.RIDES));
+        assertEquals(0, od.tripCount(8, 42L, 43L));
+        assertEquals(0, od.outboundTrips(8, 42L));
+        assertEquals(0.0, od.outboundQuality(25, 42L));
+    }
+}
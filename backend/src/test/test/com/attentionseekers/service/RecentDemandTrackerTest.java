@@ -0,0 +1,103 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentDemandTrackerTest {
+
+    @Test
+    public void countsHalveAfterOneHalfLife() {
+        MutableClock clock = new MutableClock();
+        RecentDemandTracker tracker = new RecentDemandTracker(Duration.ofMinutes(30), clock);
+
+        tracker.record(EventDataset.RIDES, 1, 2, 0L, clock.epochMinute());
+        tracker.record(EventDataset.RIDES, 1, 2, 0L, clock.epochMinute());
+        assertEquals(2.0, tracker.zoneRates(EventDataset.RIDES, 1)[2], 1e-9);
+
+        clock.advance(Duration.ofMinutes(30));
+        assertEquals(1.0, tracker.zoneRates(EventDataset.RIDES, 1)[2], 1e-9);
+        assertEquals(1.0, tracker.zoneRates(EventDataset.RIDES, -1)[2], 1e-9);
+
+        tracker.record(EventDataset.RIDES, 1, 2, 0L, clock.epochMinute());
+        assertEquals(2.0, tracker.zoneRates(EventDataset.RIDES, 1)[2], 1e-9);
+        assertEquals(0.0, tracker.zoneRates(EventDataset.EATS, 1)[2], 1e-9);
+        assertEquals(0.0, tracker.zoneRates(EventDataset.RIDES, 2)[2], 1e-9);
+    }
+
+    @Test
+    public void eventsDecayFromTheirStartTime() {
+        MutableClock clock = new MutableClock();
+        RecentDemandTracker tracker = new RecentDemandTracker(Duration.ofMinutes(30), clock);
+        int now = clock.epochMinute();
+
+        // a backfilled event an hour old is already two half-lives down
+        tracker.record(EventDataset.RIDES, 1, 0, 0L, now - 60);
+        assertEquals(0.25, tracker.zoneRates(EventDataset.RIDES, 1)[0], 1e-9);
+
+        tracker.record(EventDataset.RIDES, 1, 0, 0L, now);
+        tracker.record(EventDataset.RIDES, 1, 0, 0L, now - 30);
+        assertEquals(1.75, tracker.zoneRates(EventDataset.RIDES, 1)[0], 1e-9);
+
+        // start times ahead of the clock count as now
+        tracker.record(EventDataset.RIDES, 1, 1, 0L, now + 600);
+        assertEquals(1.0, tracker.zoneRates(EventDataset.RIDES, 1)[1], 1e-9);
+    }
+
+    @Test
+    public void hexCountsDecayPerCityAndAreDroppedOnceNegligible() {
+        MutableClock clock = new MutableClock();
+        RecentDemandTracker tracker = new RecentDemandTracker(Duration.ofMinutes(30), clock);
+        long hex = TripEventStore.parseHex("89b5443252677be");
+
+        tracker.record(EventDataset.RIDES, 1, 2, hex, clock.epochMinute());
+        tracker.record(EventDataset.RIDES, 1, 2, hex, clock.epochMinute());
+        tracker.record(EventDataset.RIDES, 2, 2, hex, clock.epochMinute());
+        tracker.record(EventDataset.RIDES, 2, 1, 0L, clock.epochMinute());
+
+        assertEquals(2.0, tracker.hexRates(EventDataset.RIDES, 1).get(hex), 1e-9);
+        assertEquals(3.0, tracker.hexRates(EventDataset.RIDES, -1).get(hex), 1e-9);
+        assertEquals(1, tracker.hexRates(EventDataset.RIDES, 2).size());
+        assertTrue(tracker.hexRates(EventDataset.EATS, 1).isEmpty());
+
+        clock.advance(Duration.ofMinutes(30));
+        assertEquals(1.0, tracker.hexRates(EventDataset.RIDES, 1).get(hex), 1e-9);
+
+        clock.advance(Duration.ofMinutes(30 * 12));
+        assertTrue(tracker.hexRates(EventDataset.RIDES, 1).isEmpty());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-10-17T08:00:00Z");
+
+        void advance(Duration d) {
+            now = now.plus(d);
+        }
+
+        int epochMinute() {
+            return TripEventStore.toEpochMinute(LocalDateTime.now(this));
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.dto.RouteRestStop;
+import com.attentionseekers.dto.RouteRestStopRequest;
+import com.attentionseekers.model.RestLocation;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RestLocationServiceTest {
+
+    @Test
+    public void pagesCoverEveryMatchOnceInFileOrder() throws Exception {
+        RestLocationService service = service();
+        RestLocation centre = service.findClosest(52.09, 5.12, 1).get(0);
+        double lat = centre.getLatitude();
+        double lon = centre.getLongitude();
+
+        RestLocationService.Page single = service.findWithin(lat, lon, 2000.0, null, RestLocationService.MAX_PAGE_SIZE);
+        assertNull(single.nextCursor());
+        List<String> expected = ids(single);
+        assertTrue(expected.size() > 7);
+        List<String> scanned = service.getAllLocations().stream()
+                .filter(l -> GeoDistance.haversineKm(lat, lon, l.getLatitude(), l.getLongitude()) <= 2.0)
+                .map(RestLocation::getId)
+                .sorted()
+                .toList();
+        assertEquals(scanned, expected.stream().sorted().toList());
+
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            RestLocationService.Page page = service.findWithin(lat, lon, 2000.0, cursor, 7);
+            assertTrue(page.size() <= 7);
+            paged.addAll(ids(page));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(expected, paged);
+        assertEquals((expected.size() + 6) / 7, pages);
+    }
+
+    @Test
+    public void viewportAndArgumentChecks() throws Exception {
+        RestLocationService service = service();
+        RestLocationService.Page page = service.findInViewport(52.0, 5.0, 52.2, 5.3, null, 50);
+        page.forEach(l -> {
+            assertTrue(l.getLatitude() >= 52.0 && l.getLatitude() <= 52.2);
+            assertTrue(l.getLongitude() >= 5.0 && l.getLongitude() <= 5.3);
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> service.findWithin(52.0, 5.0, 0.0, null, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.findWithin(52.0, 5.0, 100.0, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.findWithin(52.0, 5.0, 100.0, "nonsense", 10));
+        assertThrows(IllegalArgumentException.class, () -> service.findInViewport(53.0, 5.0, 52.0, 5.3, null, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.findInViewport(52.0, 5.0, 91.0, 5.3, null, 10));
+
+        // cursors do not carry over to another service's snapshot
+        String cursor = service.findInViewport(-90, -180, 90, 180, null, 1).nextCursor();
+        assertNotNull(cursor);
+        RestLocationService other = service();
+        assertThrows(IllegalArgumentException.class, () -> other.findInViewport(-90, -180, 90, 180, cursor, 1));
+    }
+
+    @Test
+    public void filteredNearestSearchesOnlyMatchingLocations() throws Exception {
+        RestLocationService service = service();
+        assertEquals(ids(service.findClosest(52.09, 5.12, 25)), ids(service.findClosest(52.09, 5.12, 25, "parking", Map.of())));
+
+        String json = "{\"type\":\"FeatureCollection\",\"features\":["
+                + feature("p1", "parking", "street_side", 52.000, 5.000) + ","
+                + feature("c1", "charging_station", null, 52.001, 5.000) + ","
+                + feature("p2", "parking", "underground", 52.002, 5.000) + ","
+                + feature("p3", "parking", "street_side", 52.003, 5.000) + ","
+                + feature("c2", "charging_station", null, 52.004, 5.000)
+                + "]}";
+        service.reload(new ResourceLoader() {
+            @Override
+            public Resource getResource(String location) {
+                return new ByteArrayResource(json.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public ClassLoader getClassLoader() {
+                return getClass().getClassLoader();
+            }
+        });
+
+        assertEquals(List.of("c1", "c2"), ids(service.findClosest(52.0, 5.0, 5, "charging_station", Map.of())));
+        assertEquals(List.of("p1", "p3"), ids(service.findClosest(52.0, 5.0, 5, "parking", Map.of("parking", "street_side"))));
+        assertEquals(List.of("p3", "p2"), ids(service.findClosest(52.0028, 5.0, 2, "parking", Map.of())));
+        assertEquals(List.of("p2"), ids(service.findClosest(52.0, 5.0, 5, null, Map.of("parking", "underground"))));
+        assertEquals(List.of(), ids(service.findClosest(52.0, 5.0, 5, "toilets", Map.of())));
+        assertEquals(List.of(), ids(service.findClosest(52.0, 5.0, 5, "parking", Map.of("fee", "no"))));
+    }
+
+    @Test
+    public void routeStopsMatchADenseScanInRouteOrder() throws Exception {
+        RestLocationService service = service();
+        RouteRestStopRequest request = new RouteRestStopRequest();
+        request.setPath(List.of(List.of(52.0907, 5.1214), List.of(52.1, 5.05), List.of(52.07, 4.98)));
+        request.setCorridorMeters(300.0);
+        request.setLimit(RestLocationService.MAX_PAGE_SIZE);
+
+        List<RouteRestStop> stops = service.findAlongRoute(request);
+        assertFalse(stops.isEmpty());
+        for (int i = 1; i < stops.size(); i++) {
+            assertTrue(stops.get(i - 1).getAlongRouteKm() <= stops.get(i).getAlongRouteKm());
+        }
+
+        // sample the route every ~10 m and compare, leaving out a band around the corridor edge
+        List<double[]> samples = new ArrayList<>();
+        List<List<Double>> path = request.getPath();
+        for (int leg = 1; leg < path.size(); leg++) {
+            for (int k = 0; k <= 1000; k++) {
+                double f = k / 1000.0;
+                samples.add(new double[]{
+                        path.get(leg - 1).get(0) + (path.get(leg).get(0) - path.get(leg - 1).get(0)) * f,
+                        path.get(leg - 1).get(1) + (path.get(leg).get(1) - path.get(leg - 1).get(1)) * f});
+            }
+        }
+        Set<String> found = new HashSet<>();
+        stops.forEach(stop -> found.add(stop.getLocation().getId()));
+        for (RestLocation l : service.getAllLocations()) {
+            double km = samples.stream()
+                    .mapToDouble(p -> GeoDistance.haversineKm(p[0], p[1], l.getLatitude(), l.getLongitude()))
+                    .min().orElseThrow();
+            if (km < 0.28) assertTrue(found.contains(l.getId()));
+            if (km > 0.32) assertFalse(found.contains(l.getId()));
+        }
+    }
+
+    @Test
+    public void routeArgumentChecks() throws Exception {
+        RestLocationService service = service();
+        RouteRestStopRequest request = new RouteRestStopRequest();
+        assertThrows(IllegalArgumentException.class, () -> service.findAlongRoute(request));
+
+        request.setPickupLat(52.09);
+        request.setPickupLon(5.12);
+        request.setDropoffLat(52.10);
+        request.setDropoffLon(5.05);
+        assertEquals(List.of(), service.findAlongRoute(withAmenity(request, "toilets")));
+        request.setAmenity(null);
+        request.setCorridorMeters(0.0);
+        assertThrows(IllegalArgumentException.class, () -> service.findAlongRoute(request));
+        request.setCorridorMeters(200.0);
+        request.setLimit(3);
+        assertTrue(service.findAlongRoute(request).size() <= 3);
+
+        request.setPath(List.of(List.of(52.0, 5.0)));
+        assertThrows(IllegalArgumentException.class, () -> service.findAlongRoute(request));
+    }
+
+    private static RouteRestStopRequest withAmenity(RouteRestStopRequest request, String amenity) {
+        request.setAmenity(amenity);
+        return request;
+    }
+
+    private static String feature(String id, String amenity, String parking, double lat, double lon) {
+        return String.format(Locale.ROOT, "{\"type\":\"Feature\",\"id\":\"%s\",\"properties\":{\"amenity\":\"%s\"%s},"
+                        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%f,%f]}}",
+                id, amenity, parking == null ? "" : ",\"parking\":\"" + parking + "\"", lon, lat);
+    }
+
+    private static List<String> ids(List<RestLocation> locations) {
+        return locations.stream().map(RestLocation::getId).toList();
+    }
+
+    private static RestLocationService service() throws Exception {
+        return new RestLocationService(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+    }
+
+    private static List<String> ids(RestLocationService.Page page) {
+        List<String> ids = new ArrayList<>();
+        page.forEach(l -> ids.add(l.getId()));
+        return ids;
+    }
+}
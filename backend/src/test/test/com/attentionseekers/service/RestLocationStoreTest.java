@@ -0,0 +1,61 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.model.RestLocation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RestLocationStoreTest {
+
+    @Test
+    public void streamingParseMatchesTheJsonTree() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode features;
+        RestLocationStore store;
+        try (InputStream in = new FileInputStream("./src/data/rest_locations.json")) {
+            features = mapper.readTree(in).get("features");
+        }
+        try (InputStream in = new FileInputStream("./src/data/rest_locations.json")) {
+            store = RestLocationStore.parse(mapper.getFactory(), in);
+        }
+
+        assertEquals(features.size(), store.size());
+        for (int i = 0; i < features.size(); i += 97) {
+            JsonNode f = features.get(i);
+            RestLocation l = store.location(i);
+            assertEquals(f.get("id").asText(), l.getId());
+            assertEquals(f.get("properties").path("amenity").asText(""), l.getAmenity());
+            assertEquals(f.get("properties").has("name") ? f.get("properties").get("name").asText() : null, l.getName());
+            assertEquals(f.get("geometry").get("coordinates").get(1).asDouble(), l.getLatitude().doubleValue());
+            assertEquals(f.get("geometry").get("coordinates").get(0).asDouble(), l.getLongitude().doubleValue());
+        }
+        assertTrue(store.approxBytes() > 0);
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndNonPointGeometry() throws Exception {
+        String json = "{\"type\":\"FeatureCollection\",\"meta\":{\"nested\":[1,2,{\"a\":3}]},\"features\":["
+                + "{\"type\":\"Feature\",\"id\":\"way/1\",\"properties\":{\"amenity\":\"parking\",\"tags\":{\"x\":1}},"
+                + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[5.0,52.0],[5.1,52.0],[5.0,52.1]]]}},"
+                + "{\"id\":\"node/2\",\"geometry\":{\"coordinates\":[5.5,52.5],\"type\":\"Point\"},"
+                + "\"properties\":{\"name\":\"Rustplaats\",\"extra\":[1,2]}}"
+                + "]}";
+        RestLocationStore store = RestLocationStore.parse(new ObjectMapper().getFactory(),
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, store.size());
+        RestLocation l = store.location(0);
+        assertEquals("node/2", l.getId());
+        assertEquals("", l.getAmenity());
+        assertEquals("Rustplaats", l.getName());
+        assertEquals(52.5, l.getLatitude().doubleValue());
+        assertEquals(5.5, l.getLongitude().doubleValue());
+    }
+}
@@ -0,0 +1,77 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SurgeTableTest {
+
+    @Test
+    public void lookaheadWrapsPastMidnightAndFindsTheBestHour() {
+        SurgeTable table = new SurgeTable(
+                new int[]{2, 2, 2, 2, 3},
+                new int[]{22, 23, 0, 1, 23},
+                new double[]{1.1, 1.4, 1.9, 1.2, 2.0},
+                5);
+
+        SurgeTable.Lookahead outlook = table.lookahead(2, 22, 3);
+        assertEquals(22, outlook.hour());
+        assertEquals(3, outlook.hours());
+        assertEquals(1.1, outlook.current());
+        assertEquals(1.9, outlook.surge(2));
+        assertEquals(0.3, outlook.delta(1), 1e-9);
+        assertEquals(-0.7, outlook.delta(3), 1e-9);
+        assertEquals(2, outlook.bestOffset());
+        assertEquals(0, outlook.bestHour());
+        assertEquals(1.9, outlook.bestSurge());
+
+        assertEquals(1.7, table.averageSurge(23), 1e-9);
+        assertEquals(1.0, table.averageSurge(5));
+        assertEquals(1.0, table.surge(2, 5));
+        assertEquals(1.0, table.surge(-1, 0));
+        assertEquals(1.0, table.lookahead(9, 0, 2).bestSurge());
+        assertThrows(IllegalArgumentException.class, () -> table.lookahead(2, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> table.averageLookahead(24, 1));
+    }
+
+    @Test
+    public void repeatedRowsAreAveragedAndUnusableRowsSkipped() {
+        SurgeTable table = SurgeTable.fromRows(List.of(
+                new String[]{"city_id", "hour", "surge_multiplier"},
+                new String[]{"1", "8", "1.2"},
+                new String[]{"1", "8", "1.6"},
+                new String[]{"0", "8", "3.0"},
+                new String[]{"1", "24", "3.0"},
+                new String[]{"1", "9", ""}));
+
+        assertEquals(1.4, table.surge(1, 8), 1e-9);
+        assertEquals(1.4, table.averageSurge(8), 1e-9);
+        assertEquals(1.0, table.surge(1, 9));
+        assertEquals(1.0, table.surge(0, 8));
+    }
+
+    @Test
+    public void tripAnalysisAndDemandFeaturesReadTheSameSurge() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        DemandFeatureStore features = new DemandFeatureStore(new DefaultResourceLoader());
+
+        for (int hour = 0; hour < 24; hour++) {
+            assertEquals(loader.getSurgeForCityAndHour(1, hour), features.surgeMultiplier(1, hour));
+            assertEquals(loader.getAverageSurgeForHour(hour), features.surgeMultiplier(0, hour));
+        }
+    }
+
+    @Test
+    public void loaderSurgeMatchesTheCsv() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+
+        SurgeTable.Lookahead outlook = loader.getSurgeLookahead(1, 23, 2);
+        assertEquals(loader.getSurgeForCityAndHour(1, 23), outlook.current());
+        assertEquals(loader.getSurgeForCityAndHour(1, 0), outlook.surge(1));
+        assertEquals(loader.getSurgeForCityAndHour(1, 1), outlook.surge(2));
+        assertEquals(loader.getAverageSurgeForHour(0), loader.getSurgeLookahead(23, 1).surge(1));
+    }
+}
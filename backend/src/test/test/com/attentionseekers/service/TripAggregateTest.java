@@ -0,0 +1,55 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripAggregateTest {
+
+    @Test
+    public void matchesTwoPassStatistics() {
+        double[] values = {0.42, 1.75, 0.9, 2.3, 0.05, 1.1};
+        TripAggregate aggregate = new TripAggregate().reset(1.0);
+        for (double v : values) {
+            aggregate.add(v, 1.5, 3.0);
+        }
+
+        double mean = Arrays.stream(values).average().orElse(0.0);
+        double variance = Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / values.length;
+        assertEquals(values.length, aggregate.count());
+        assertEquals(mean, aggregate.meanEarningsPerMinute(), 1e-12);
+        assertEquals(variance, aggregate.earningsPerMinuteVariance(), 1e-12);
+        assertEquals(0.05, aggregate.minEarningsPerMinute());
+        assertEquals(2.3, aggregate.maxEarningsPerMinute());
+        assertEquals(3, aggregate.aboveThreshold());
+        assertEquals(1.5, aggregate.meanSurge(), 1e-12);
+        assertEquals(3.0, aggregate.meanDistanceKm(), 1e-12);
+
+        aggregate.reset(0.0);
+        assertEquals(0, aggregate.count());
+        assertEquals(0.0, aggregate.earningsPerMinuteVariance());
+        assertEquals(1.0, aggregate.meanSurge());
+    }
+
+    @Test
+    public void loaderAggregatesTheSameTripsAsTheListLookup() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        HistoricalTripDataLoader.TripRecord probe = loader.getAllTrips().get(0);
+        int hour = probe.startTime.getHour();
+
+        List<HistoricalTripDataLoader.TripRecord> trips =
+                loader.getTripsWithPickupNear(hour, probe.pickupLat, probe.pickupLon, 5.0);
+        TripAggregate aggregate =
+                loader.aggregatePickupsNear(hour, probe.pickupLat, probe.pickupLon, 5.0, new TripAggregate());
+
+        assertEquals(trips.size(), aggregate.count());
+        assertEquals(trips.stream().mapToDouble(t -> t.netEarnings / t.durationMins).average().orElse(0.0),
+                aggregate.meanEarningsPerMinute(), 1e-9);
+        assertEquals(trips.stream().mapToDouble(t -> t.surgeMultiplier).average().orElse(1.0),
+                aggregate.meanSurge(), 1e-9);
+    }
+}
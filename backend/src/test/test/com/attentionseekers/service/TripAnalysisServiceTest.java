@@ -0,0 +1,166 @@
+package com.attentionseekers.service;
+
+import com.attentionseekers.dto.TripAnalysisRequest;
+import com.attentionseekers.dto.TripOfferScore;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripAnalysisServiceTest {
+
+    @Test
+    public void batchReturnsEveryOfferRankedByScore() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        try (TripAnalysisService service = new TripAnalysisService(loader, 3, 50)) {
+            List<TripAnalysisRequest> offers = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                HistoricalTripDataLoader.TripRecord trip = loader.getAllTrips().get(i % 5);
+                offers.add(offer(4.0 + i, 5 + i, trip));
+            }
+
+            List<TripOfferScore> ranked = service.analyzeTripBatch(offers);
+
+            assertEquals(50, ranked.size());
+            assertEquals(50, ranked.stream().mapToInt(TripOfferScore::getIndex).distinct().count());
+            for (int i = 0; i < ranked.size(); i++) {
+                assertEquals(i + 1, ranked.get(i).getRank());
+                assertTrue(ranked.get(i).getSuggestion().startsWith(ranked.get(i).getRecommendation()));
+                if (i > 0) assertTrue(ranked.get(i - 1).getScore() >= ranked.get(i).getScore());
+            }
+        }
+    }
+
+    @Test
+    public void batchRejectsEmptyAndOversizedRequests() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        try (TripAnalysisService service = new TripAnalysisService(loader, 1, 2)) {
+            HistoricalTripDataLoader.TripRecord trip = loader.getAllTrips().get(0);
+            assertThrows(IllegalArgumentException.class, () -> service.analyzeTripBatch(List.of()));
+            assertThrows(IllegalArgumentException.class, () -> service.analyzeTripBatch(
+                    List.of(offer(10, 10, trip), offer(11, 10, trip), offer(12, 10, trip))));
+        }
+    }
+
+    @Test
+    public void identicalOffersScoreIdenticallyAndReuseTheAnalysis() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        try (TripAnalysisService service = new TripAnalysisService(loader)) {
+            HistoricalTripDataLoader.TripRecord trip = loader.getAllTrips().get(0);
+            String first = service.analyzeTripRequest(offer(18.5, 22, trip));
+            String second = service.analyzeTripRequest(offer(18.5, 22, trip));
+
+            assertEquals(first, second);
+            assertEquals(1L, service.cacheStats().get("misses").longValue());
+            assertEquals(1L, service.cacheStats().get("hits").longValue());
+
+            // a different offer from the same pickup and dropoff cells still skips the analysis
+            service.analyzeTripRequest(offer(30.0, 25, trip));
+            assertEquals(2L, service.cacheStats().get("hits").longValue());
+
+            service.invalidateCache();
+            assertEquals(0L, service.cacheStats().get("size").longValue());
+        }
+    }
+
+    @Test
+    public void concurrentOffersForTheSameCellsShareOneAnalysis() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        try (TripAnalysisService service = new TripAnalysisService(loader, 8, 50)) {
+            HistoricalTripDataLoader.TripRecord trip = loader.getAllTrips().get(0);
+            List<TripAnalysisRequest> offers = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                offers.add(offer(10.0 + i, 20, trip));
+            }
+
+            service.analyzeTripBatch(offers);
+
+            assertEquals(1L, service.cacheStats().get("misses").longValue());
+            assertEquals(49L, service.cacheStats().get("hits").longValue());
+        }
+    }
+
+    @Test
+    public void offersAreAnalysedAgainstTheirOwnCity() {
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(new DefaultResourceLoader());
+        try (TripAnalysisService service = new TripAnalysisService(loader)) {
+            HistoricalTripDataLoader.TripRecord trip = loader.getAllTrips().get(0);
+            TripAnalysisRequest derived = offer(18.5, 22, trip);
+            TripAnalysisRequest explicit = offer(18.5, 22, trip);
+            explicit.setCityId(trip.cityId);
+
+            // the city derived from the pickup shares the analysis of the explicit one
+            assertEquals(service.analyzeTripRequest(explicit), service.analyzeTripRequest(derived));
+            assertEquals(1L, service.cacheStats().get("hits").longValue());
+
+            // an unknown city falls back to every city's trips
+            TripAnalysisRequest unknown = offer(18.5, 22, trip);
+            unknown.setCityId(-7);
+            service.analyzeTripRequest(unknown);
+            assertEquals(2L, service.cacheStats().get("misses").longValue());
+        }
+    }
+
+    @Test
+    public void returnTripsAddUpEveryPickupHexNearTheDropoff() throws Exception {
+        // 24 trips out of two hexes around the dropoff: high demand
+        String busy = returnTripAnalysis(12);
+        assertTrue(busy.contains("(24 return trips)"), busy);
+        assertTrue(busy.contains("High demand"), busy);
+
+        // 12 trips: more than 10 is a good return area, but not yet high demand
+        String moderate = returnTripAnalysis(6);
+        assertTrue(moderate.contains("(12 return trips)"), moderate);
+        assertTrue(moderate.contains("Good return trip area"), moderate);
+        assertFalse(moderate.contains("High demand"), moderate);
+    }
+
+    // City 3 trips of the current hour, tripsPerHex out of each of two hexes about 1.8 km apart,
+    // each heading for the other hex; the offer drops off at the first one.
+    private static String returnTripAnalysis(int tripsPerHex) throws Exception {
+        String hour = String.format("%02d", LocalTime.now().getHour());
+        StringBuilder csv = new StringBuilder("ride_id,city_id,start_time,pickup_lat,pickup_lon,pickup_hex_id9,"
+                + "drop_lat,drop_lon,drop_hex_id9,distance_km,duration_mins,surge_multiplier,net_earnings\n");
+        for (int i = 0; i < tripsPerHex; i++) {
+            csv.append("a").append(i).append(",3,2023-01-13 ").append(hour).append(":10:00,")
+                    .append("52.09319,5.17695,89b5443252677be,52.08017,5.16125,896326c3e14b5c2,2,10,1.0,8.0\n");
+            csv.append("b").append(i).append(",3,2023-01-13 ").append(hour).append(":20:00,")
+                    .append("52.08017,5.16125,896326c3e14b5c2,52.09319,5.17695,89b5443252677be,2,10,1.0,8.0\n");
+        }
+        Path dir = Files.createTempDirectory("trip-data");
+        Files.writeString(dir.resolve("rides_trips.csv"), csv.toString());
+        HistoricalTripDataLoader loader = new HistoricalTripDataLoader(
+                new TripEventStore(new DataSnapshots(dir.toString(), new DefaultResourceLoader())));
+
+        try (TripAnalysisService service = new TripAnalysisService(loader)) {
+            TripAnalysisRequest request = new TripAnalysisRequest();
+            request.setCityId(3);
+            request.setTotalEarnings(8.0);
+            request.setEstimatedDuration(10);
+            request.setDistance(2.0);
+            request.setPickupLat("52.08017");
+            request.setPickupLon("5.16125");
+            request.setDropOffLat("52.09319");
+            request.setDropOffLon("5.17695");
+            return service.analyzeTripRequest(request);
+        }
+    }
+
+    private static TripAnalysisRequest offer(double earnings, int minutes, HistoricalTripDataLoader.TripRecord trip) {
+        TripAnalysisRequest request = new TripAnalysisRequest();
+        request.setTotalEarnings(earnings);
+        request.setEstimatedDuration(minutes);
+        request.setDistance(minutes / 2.0);
+        request.setPickupLat(String.valueOf(trip.pickupLat));
+        request.setPickupLon(String.valueOf(trip.pickupLon));
+        request.setDropOffLat(String.valueOf(trip.dropLat));
+        request.setDropOffLon(String.valueOf(trip.dropLon));
+        return request;
+    }
+}
@@ -0,0 +1,44 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripEventStoreTest {
+
+    @Test
+    public void epochMinuteRoundTripsHourAndWeekday() {
+        LocalDateTime dt = LocalDateTime.of(2023, 1, 13, 23, 50);
+        int minute = TripEventStore.parseEpochMinute("2023-01-13 23:50:00");
+
+        assertEquals(TripEventStore.toEpochMinute(dt), minute);
+        assertEquals(23, TripEventStore.hourOf(minute));
+        assertEquals(dt.getDayOfWeek().getValue(), TripEventStore.dayOfWeekOf(minute));
+        assertEquals(dt, TripEventStore.toDateTime(minute));
+    }
+
+    @Test
+    public void hexIdsRoundTrip() {
+        long hex = TripEventStore.parseHex("89b5443252677be");
+        assertEquals("89b5443252677be", TripEventStore.hexToString(hex));
+        assertEquals(0L, TripEventStore.parseHex(""));
+    }
+
+    @Test
+    public void loadsBothDatasetsIntoColumns() {
+        TripEventStore store = new TripEventStore(new DefaultResourceLoader());
+
+        TripEventStore.Columns rides = store.columns(EventDataset.RIDES);
+        TripEventStore.Columns eats = store.columns(EventDataset.EATS);
+        assertTrue(rides.size() > 0);
+        assertTrue(eats.size() > 0);
+        for (int i = 0; i < eats.size(); i++) {
+            assertTrue(eats.cityId[i] > 0);
+            assertEquals(1.0, eats.surge[i]);
+        }
+        assertFalse(store.cityIds().isEmpty());
+    }
+}
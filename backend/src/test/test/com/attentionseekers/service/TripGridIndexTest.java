@@ -0,0 +1,46 @@
+package com.attentionseekers.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripGridIndexTest {
+
+    @Test
+    public void radiusQueriesMatchBruteForce() {
+        Random random = new Random(7);
+        int n = 5_000;
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = 52.0 + random.nextDouble() * 0.8;
+            lon[i] = 4.5 + random.nextDouble() * 0.8;
+        }
+        TripGridIndex index = new TripGridIndex(lat, lon);
+
+        for (int q = 0; q < 200; q++) {
+            double qLat = 51.9 + random.nextDouble();
+            double qLon = 4.4 + random.nextDouble();
+            double radius = q % 2 == 0 ? 5.0 : 0.5 + random.nextDouble() * 20.0;
+            assertArrayEquals(bruteForce(lat, lon, qLat, qLon, radius), index.within(qLat, qLon, radius));
+        }
+    }
+
+    @Test
+    public void queriesAcrossTheAntimeridianStillFindPoints() {
+        double[] lat = {0.0, 0.0, 10.0};
+        double[] lon = {179.99, -179.99, 179.99};
+        TripGridIndex index = new TripGridIndex(lat, lon);
+
+        assertArrayEquals(new int[]{0, 1}, index.within(0.0, 180.0, 5.0));
+        assertEquals(0, index.within(45.0, 0.0, 5.0).length);
+    }
+
+    private static int[] bruteForce(double[] lat, double[] lon, double qLat, double qLon, double radius) {
+        return java.util.stream.IntStream.range(0, lat.length)
+                .filter(i -> GeoDistance.haversineKm(qLat, qLon, lat[i], lon[i]) <= radius)
+                .toArray();
+    }
+}